@@ -0,0 +1,138 @@
+package recs;
+
+import java.lang.reflect.Field;
+
+/**
+ * ComponentMapper storing the fields of its components in one primitive array per field,
+ * indexed by entity id. Only components with nothing but primitive fields and a constructor
+ * without arguments can be stored this way. See {@link ComponentStorage#COLUMNAR}
+ *
+ * The component objects are not kept, get() returns a single reused instance that is filled with
+ * the values of the entity, changing it does not change the stored values. Use set() to store the
+ * values of a component, or change the columns directly:
+ *
+ * <pre>
+ * float[] x = positionMapper.getFloats("x");
+ * float[] vx = velocityMapper.getFloats("x");
+ * for (int id = ...)
+ *     x[id] += vx[id] * deltaInSec;
+ * </pre>
+ *
+ * The column arrays are replaced when an entity with a higher id is added, so retrieve them
+ * again every time the system is processed.
+ *
+ * @author Enrico van Oosten
+ */
+public final class ColumnarComponentMapper<T extends Component> extends ValueComponentMapper<T> {
+	/** A primitive array for every field of the component */
+	private final Object[] columns;
+
+	ColumnarComponentMapper(ComponentLayout layout) {
+		super(layout);
+		columns = new Object[layout.fields.length];
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = newColumn(layout.types[i], capacity);
+	}
+
+	public boolean[] getBooleans(String field) {
+		return (boolean[]) columns[layout.indexOf(field, ComponentLayout.BOOLEAN)];
+	}
+
+	public byte[] getBytes(String field) {
+		return (byte[]) columns[layout.indexOf(field, ComponentLayout.BYTE)];
+	}
+
+	public char[] getChars(String field) {
+		return (char[]) columns[layout.indexOf(field, ComponentLayout.CHAR)];
+	}
+
+	public short[] getShorts(String field) {
+		return (short[]) columns[layout.indexOf(field, ComponentLayout.SHORT)];
+	}
+
+	public int[] getInts(String field) {
+		return (int[]) columns[layout.indexOf(field, ComponentLayout.INT)];
+	}
+
+	public long[] getLongs(String field) {
+		return (long[]) columns[layout.indexOf(field, ComponentLayout.LONG)];
+	}
+
+	public float[] getFloats(String field) {
+		return (float[]) columns[layout.indexOf(field, ComponentLayout.FLOAT)];
+	}
+
+	public double[] getDoubles(String field) {
+		return (double[]) columns[layout.indexOf(field, ComponentLayout.DOUBLE)];
+	}
+
+	@Override
+	void grow(int newCapacity) {
+		for (int i = 0; i < columns.length; i++) {
+			Object newColumn = newColumn(layout.types[i], newCapacity);
+			System.arraycopy(columns[i], 0, newColumn, 0, capacity);
+			columns[i] = newColumn;
+		}
+	}
+
+	/** Copy the field values of the component into the columns */
+	@Override
+	void store(int id, Component component) {
+		Field[] fields = layout.fields;
+		int[] types = layout.types;
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				Object column = columns[i];
+				switch (types[i]) {
+				case ComponentLayout.BOOLEAN: ((boolean[]) column)[id] = fields[i].getBoolean(component); break;
+				case ComponentLayout.BYTE: ((byte[]) column)[id] = fields[i].getByte(component); break;
+				case ComponentLayout.CHAR: ((char[]) column)[id] = fields[i].getChar(component); break;
+				case ComponentLayout.SHORT: ((short[]) column)[id] = fields[i].getShort(component); break;
+				case ComponentLayout.INT: ((int[]) column)[id] = fields[i].getInt(component); break;
+				case ComponentLayout.LONG: ((long[]) column)[id] = fields[i].getLong(component); break;
+				case ComponentLayout.FLOAT: ((float[]) column)[id] = fields[i].getFloat(component); break;
+				case ComponentLayout.DOUBLE: ((double[]) column)[id] = fields[i].getDouble(component); break;
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Copy the values in the columns into the fields of the component */
+	@Override
+	void load(int id, Component component) {
+		Field[] fields = layout.fields;
+		int[] types = layout.types;
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				Object column = columns[i];
+				switch (types[i]) {
+				case ComponentLayout.BOOLEAN: fields[i].setBoolean(component, ((boolean[]) column)[id]); break;
+				case ComponentLayout.BYTE: fields[i].setByte(component, ((byte[]) column)[id]); break;
+				case ComponentLayout.CHAR: fields[i].setChar(component, ((char[]) column)[id]); break;
+				case ComponentLayout.SHORT: fields[i].setShort(component, ((short[]) column)[id]); break;
+				case ComponentLayout.INT: fields[i].setInt(component, ((int[]) column)[id]); break;
+				case ComponentLayout.LONG: fields[i].setLong(component, ((long[]) column)[id]); break;
+				case ComponentLayout.FLOAT: fields[i].setFloat(component, ((float[]) column)[id]); break;
+				case ComponentLayout.DOUBLE: fields[i].setDouble(component, ((double[]) column)[id]); break;
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Object newColumn(int type, int capacity) {
+		switch (type) {
+		case ComponentLayout.BOOLEAN: return new boolean[capacity];
+		case ComponentLayout.BYTE: return new byte[capacity];
+		case ComponentLayout.CHAR: return new char[capacity];
+		case ComponentLayout.SHORT: return new short[capacity];
+		case ComponentLayout.INT: return new int[capacity];
+		case ComponentLayout.LONG: return new long[capacity];
+		case ComponentLayout.FLOAT: return new float[capacity];
+		default: return new double[capacity];
+		}
+	}
+}
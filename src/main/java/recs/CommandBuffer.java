@@ -0,0 +1,212 @@
+package recs;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntSet;
+import com.badlogic.gdx.utils.LongArray;
+
+/**
+ * Records structural changes to a world so they can be made safely while systems are iterating
+ * their entities, or from the threads of EntityTaskSystems. Retrieve the buffer of a world with
+ * {@link EntityWorld#getCommandBuffer()}.
+ *
+ * The world plays the recorded commands back in order after every system it processes and at
+ * the end of {@link EntityWorld#process(float)}, consecutive entity additions and removals are
+ * played back as one batch. Commands on an entity that was removed before the command was
+ * played back are skipped, also when its id was reused by a newer entity: the commands keep the
+ * handle of the entity, see {@link EntityWorld#getEntityHandle(int)}.
+ *
+ * The methods taking an entity id look up the handle of the entity in the world, they may only be
+ * called from the thread processing the world, which includes processEntity of a
+ * ParallelEntitySystem. Other threads, like those of EntityTaskSystems, record commands with a
+ * handle they got from the world before they started.
+ *
+ * @author Enrico van Oosten
+ */
+public final class CommandBuffer {
+	private static final int ADD_ENTITY = 0;
+	private static final int REMOVE_ENTITY = 1;
+	private static final int ADD_COMPONENTS = 2;
+	private static final int REMOVE_COMPONENTS = 3;
+
+	private final EntityWorld world;
+
+	/** The handle recorded for entities which are not in the world, never resolves to an entity */
+	private static final long NO_ENTITY = 0L;
+
+	/** The recorded commands, with the entity handle and argument of every command */
+	private IntArray commands = new IntArray();
+	private LongArray entityHandles = new LongArray();
+	private Array<Object> arguments = new Array<Object>();
+
+	/** The commands being played back, swapped with the recorded commands on playback */
+	private IntArray playbackCommands = new IntArray();
+	private LongArray playbackEntityHandles = new LongArray();
+	private Array<Object> playbackArguments = new Array<Object>();
+
+	private final Array<Entity> batchedEntities = new Array<Entity>(false, 16, Entity.class);
+	private final IntArray batchedIds = new IntArray();
+	private final IntSet batchedIdSet = new IntSet();
+
+	CommandBuffer(EntityWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Add the entity to the world when the buffer is played back.
+	 */
+	public synchronized void addEntity(Entity entity) {
+		record(ADD_ENTITY, NO_ENTITY, entity);
+	}
+
+	/**
+	 * Remove the entity with the given id from the world when the buffer is played back. Only
+	 * call from the thread processing the world.
+	 */
+	public void removeEntity(int entityId) {
+		removeEntity(getHandle(entityId));
+	}
+
+	/**
+	 * Remove the entity of the handle from the world when the buffer is played back, can be
+	 * called from any thread.
+	 */
+	public synchronized void removeEntity(long entityHandle) {
+		record(REMOVE_ENTITY, entityHandle, null);
+	}
+
+	/**
+	 * Add components to the entity with the given id when the buffer is played back. Only call
+	 * from the thread processing the world.
+	 */
+	public void addComponent(int entityId, Component... components) {
+		addComponent(getHandle(entityId), components);
+	}
+
+	/**
+	 * Add components to the entity of the handle when the buffer is played back, can be called
+	 * from any thread.
+	 */
+	public synchronized void addComponent(long entityHandle, Component... components) {
+		record(ADD_COMPONENTS, entityHandle, components);
+	}
+
+	/**
+	 * Remove components from the entity with the given id when the buffer is played back. Only
+	 * call from the thread processing the world.
+	 */
+	public void removeComponent(int entityId, Component... components) {
+		removeComponent(getHandle(entityId), components);
+	}
+
+	/**
+	 * Remove components from the entity of the handle when the buffer is played back, can be
+	 * called from any thread.
+	 */
+	public synchronized void removeComponent(long entityHandle, Component... components) {
+		record(REMOVE_COMPONENTS, entityHandle, components);
+	}
+
+	/**
+	 * The number of commands waiting to be played back.
+	 */
+	public synchronized int size() {
+		return commands.size;
+	}
+
+	/** Get the handle of the entity with the id, commands on entities not in the world are skipped */
+	private long getHandle(int entityId) {
+		return world.getEntity(entityId) != null ? world.getEntityHandle(entityId) : NO_ENTITY;
+	}
+
+	private void record(int command, long entityHandle, Object argument) {
+		commands.add(command);
+		entityHandles.add(entityHandle);
+		arguments.add(argument);
+	}
+
+	/**
+	 * Play back all the recorded commands, including the ones recorded during the playback.
+	 */
+	void playback() {
+		while (swap()) {
+			int size = playbackCommands.size;
+			int[] commands = playbackCommands.items;
+			int i = 0;
+			while (i < size) {
+				switch (commands[i]) {
+				case ADD_ENTITY:
+					i = addEntities(i, size);
+					break;
+				case REMOVE_ENTITY:
+					i = removeEntities(i, size);
+					break;
+				case ADD_COMPONENTS: {
+					Entity e = world.getEntity(playbackEntityHandles.items[i]);
+					if (e != null)
+						e.addComponent((Component[]) playbackArguments.items[i]);
+					i++;
+					break;
+				}
+				case REMOVE_COMPONENTS: {
+					Entity e = world.getEntity(playbackEntityHandles.items[i]);
+					if (e != null)
+						e.removeComponent((Component[]) playbackArguments.items[i]);
+					i++;
+					break;
+				}
+				}
+			}
+			playbackCommands.clear();
+			playbackEntityHandles.clear();
+			playbackArguments.clear();
+		}
+	}
+
+	/** Take the recorded commands for playback, returns false if there are none */
+	private synchronized boolean swap() {
+		if (commands.size == 0)
+			return false;
+		IntArray tmpCommands = playbackCommands;
+		LongArray tmpEntityHandles = playbackEntityHandles;
+		Array<Object> tmpArguments = playbackArguments;
+		playbackCommands = commands;
+		playbackEntityHandles = entityHandles;
+		playbackArguments = arguments;
+		commands = tmpCommands;
+		entityHandles = tmpEntityHandles;
+		arguments = tmpArguments;
+		return true;
+	}
+
+	/** Add the entities of the run of ADD_ENTITY commands starting at from in one batch */
+	private int addEntities(int from, int size) {
+		int i = from;
+		for (; i < size && playbackCommands.items[i] == ADD_ENTITY; i++)
+			batchedEntities.add((Entity) playbackArguments.items[i]);
+		world.addEntities(batchedEntities.toArray());
+		batchedEntities.clear();
+		return i;
+	}
+
+	/** Remove the entities of the run of REMOVE_ENTITY commands starting at from in one batch */
+	private int removeEntities(int from, int size) {
+		int i = from;
+		for (; i < size && playbackCommands.items[i] == REMOVE_ENTITY; i++) {
+			Entity e = world.getEntity(playbackEntityHandles.items[i]);
+			if (e != null && batchedIdSet.add(e.id))
+				batchedIds.add(e.id);
+		}
+		world.removeEntities(batchedIds.items, batchedIds.size);
+		batchedIds.clear();
+		batchedIdSet.clear();
+		return i;
+	}
+
+	/** Drop all the recorded commands */
+	synchronized void clear() {
+		commands.clear();
+		entityHandles.clear();
+		arguments.clear();
+	}
+}
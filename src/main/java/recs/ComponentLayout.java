@@ -0,0 +1,107 @@
+package recs;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Caches the primitive fields of a component class so mappers can store the values of those
+ * fields instead of the component objects.
+ *
+ * @author Enrico van Oosten
+ */
+final class ComponentLayout {
+	static final int BOOLEAN = 0;
+	static final int BYTE = 1;
+	static final int CHAR = 2;
+	static final int SHORT = 3;
+	static final int INT = 4;
+	static final int LONG = 5;
+	static final int FLOAT = 6;
+	static final int DOUBLE = 7;
+
+	final Class<? extends Component> componentClass;
+	/** All the instance fields of the component, including those of its superclasses */
+	final Field[] fields;
+	/** The primitive type of every field, one of the constants of this class */
+	final int[] types;
+	private final Constructor<? extends Component> constructor;
+
+	/**
+	 * Read the fields of the component class, throws an IllegalArgumentException if the
+	 * component has fields that are not primitive, or has no constructor without arguments.
+	 */
+	ComponentLayout(Class<? extends Component> componentClass) {
+		this.componentClass = componentClass;
+
+		Array<Field> fieldList = new Array<Field>(Field.class);
+		Class<?> class1 = componentClass;
+		while (class1 != Component.class) {
+			for (Field f : class1.getDeclaredFields()) {
+				int modifiers = f.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+					continue;
+				if (!f.getType().isPrimitive() || Modifier.isFinal(modifiers))
+					throw new IllegalArgumentException("Component " + componentClass.getName()
+							+ " can only have non final primitive fields: " + f.getName());
+				f.setAccessible(true);
+				fieldList.add(f);
+			}
+			class1 = class1.getSuperclass();
+		}
+		fields = fieldList.toArray();
+		types = new int[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			types[i] = typeOf(fields[i].getType());
+
+		try {
+			constructor = componentClass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Component " + componentClass.getName()
+					+ " requires a constructor without arguments");
+		}
+	}
+
+	/** Get the index of the field with the given name, throws an IllegalArgumentException if it does not exist */
+	int indexOf(String fieldName, int expectedType) {
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i].getName().equals(fieldName)) {
+				if (types[i] != expectedType)
+					throw new IllegalArgumentException("Field " + fieldName + " of " + componentClass.getName()
+							+ " is a " + fields[i].getType());
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Component " + componentClass.getName() + " has no field " + fieldName);
+	}
+
+	/** Create a new instance of the component using its constructor without arguments */
+	Component newInstance() {
+		try {
+			return constructor.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Could not create " + componentClass.getName(), e);
+		}
+	}
+
+	private static int typeOf(Class<?> type) {
+		if (type == boolean.class)
+			return BOOLEAN;
+		if (type == byte.class)
+			return BYTE;
+		if (type == char.class)
+			return CHAR;
+		if (type == short.class)
+			return SHORT;
+		if (type == int.class)
+			return INT;
+		if (type == long.class)
+			return LONG;
+		if (type == float.class)
+			return FLOAT;
+		return DOUBLE;
+	}
+}
@@ -27,10 +27,27 @@ public final class ComponentManager {
 	 * Map which handles notification of destroyed components.
 	 */
 	private final ObjectMap<Class<? extends Component>, ComponentDestructionListener<?>> destructionListeners;
+	/**
+	 * Map which links component classes to the pool that receives their removed components.
+	 */
+	private final ObjectMap<Class<? extends Component>, ComponentPool<?>> componentPools;
+	/**
+	 * The storage used for component classes that have no storage set.
+	 */
+	private final ComponentStorage defaultStorage;
+	/**
+	 * Map which links component classes to the storage their mapper should use.
+	 */
+	private final ObjectMap<Class<? extends Component>, ComponentStorage> componentStorage;
 
-	ComponentManager(EntityWorld world) {
+	ComponentManager(EntityWorld world, ComponentStorage defaultStorage) {
+		if (defaultStorage == ComponentStorage.COLUMNAR || defaultStorage == ComponentStorage.OFF_HEAP)
+			throw new IllegalArgumentException(defaultStorage + " storage can only be set per component class");
 		this.world = world;
+		this.defaultStorage = defaultStorage;
 		destructionListeners = new ObjectMap<Class<? extends Component>, ComponentDestructionListener<? extends Component>>();
+		componentPools = new ObjectMap<Class<? extends Component>, ComponentPool<?>>();
+		componentStorage = new ObjectMap<Class<? extends Component>, ComponentStorage>();
 	}
 
 	/** Retrieve the id representing the <b>class</b> of a component */
@@ -61,10 +78,43 @@ public final class ComponentManager {
 	 */
 	<T extends Component> int registerComponent(Class<? extends Component> componentClass) {
 		componentIds.put(componentClass, ++componentIdCounter);
-		componentMappers.put(componentIdCounter, new ComponentMapper<T>());
+		ComponentMapper<T> mapper = createComponentMapper(componentClass);
+		mapper.componentId = componentIdCounter;
+		componentMappers.put(componentIdCounter, mapper);
 		return componentIdCounter;
 	}
 
+	/**
+	 * Set the storage the mapper of the given component class will use.
+	 * Has to be called before the component class is used by the world.
+	 */
+	void setComponentStorage(Class<? extends Component> componentClass, ComponentStorage storage) {
+		if (componentIds.containsKey(componentClass))
+			throw new IllegalStateException("Component already registered: " + componentClass.getName());
+		//Check if the component consists of primitive fields only before accepting the storage.
+		if (storage == ComponentStorage.COLUMNAR || storage == ComponentStorage.OFF_HEAP)
+			new ComponentLayout(componentClass);
+		componentStorage.put(componentClass, storage);
+	}
+
+	/** Create a mapper using the storage set for the given component class */
+	private <T extends Component> ComponentMapper<T> createComponentMapper(Class<? extends Component> componentClass) {
+		ComponentStorage storage = componentStorage.get(componentClass, defaultStorage);
+		switch (storage) {
+		case DENSE:
+			return new DenseComponentMapper<T>();
+		case SPARSE_SET:
+			return new SparseComponentMapper<T>(componentClass);
+		case COLUMNAR:
+			return new ColumnarComponentMapper<T>(new ComponentLayout(componentClass));
+		case OFF_HEAP:
+			return new OffHeapComponentMapper<T>(new ComponentLayout(componentClass));
+		case HASHED:
+		default:
+			return new HashComponentMapper<T>();
+		}
+	}
+
 	/** Retrieve a component mapper for the given component class */
 	@SuppressWarnings("unchecked")
 	<T extends Component> ComponentMapper<T> getComponentMapper(Class<? extends Component> class1) {
@@ -77,6 +127,7 @@ public final class ComponentManager {
 		componentIds.clear();
 		componentMappers.clear();
 		destructionListeners.clear();
+		componentPools.clear();
 	}
 
 	/** Register a listener that gets notified when components of the given class are removed from the world */
@@ -89,6 +140,17 @@ public final class ComponentManager {
 		return destructionListeners.get(componentClass);
 	}
 
+	/** Register a pool that receives the removed components of the given class */
+	void registerComponentPool(ComponentPool<? extends Component> pool, Class<? extends Component> componentClass) {
+		componentPools.put(componentClass, pool);
+	}
+
+	/** Retrieve the pool that receives the removed components of the given class */
+	@SuppressWarnings("unchecked")
+	<T extends Component> ComponentPool<T> getComponentPool(Class<T> componentClass) {
+		return (ComponentPool<T>) componentPools.get(componentClass);
+	}
+
 	/**
 	 * Removes all the components of an entity from all the component mappers.
 	 */
@@ -96,27 +158,61 @@ public final class ComponentManager {
 		RECSBits componentBits = e.family.componentBits;
 
 		for (int i = componentBits.nextSetBit(0); i >= 0; i = componentBits.nextSetBit(i + 1)) {
-			Component removedComponent = componentMappers.get(i).remove(e.id);
-			if (removedComponent != null) {
-				@SuppressWarnings("unchecked")
-				ComponentDestructionListener<Component> listener = world.getDestructionListener(removedComponent.getClass());
-				if (listener != null)
-					listener.destroyed(removedComponent);
+			ComponentMapper<?> mapper = componentMappers.get(i);
+			Component removedComponent = mapper.remove(e.id);
+			if (removedComponent != null)
+				destroyComponent(e, i, mapper, removedComponent);
+		}
+	}
+
+	/**
+	 * Removes all the components of the entities of the family from the component mappers,
+	 * one mapper at a time.
+	 */
+	void removeEntitiesFromMappers(EntityFamily family, Entity[] entities, int count) {
+		int[] familyComponentIds = family.componentIds;
+		for (int i = 0; i < familyComponentIds.length; i++) {
+			int componentId = familyComponentIds[i];
+			ComponentMapper<?> mapper = componentMappers.get(componentId);
+			for (int j = 0; j < count; j++) {
+				Component removedComponent = mapper.remove(entities[j].id);
+				if (removedComponent != null)
+					destroyComponent(entities[j], componentId, mapper, removedComponent);
 			}
 		}
 	}
 
+	/**
+	 * Notify the destruction listener of a removed component and put it back into its pool.
+	 */
+	@SuppressWarnings("unchecked")
+	private void destroyComponent(Entity e, int componentId, ComponentMapper<?> mapper, Component removedComponent) {
+		Class<? extends Component> componentClass = removedComponent.getClass();
+		ComponentDestructionListener<Component> listener = world.getDestructionListener(componentClass);
+		if (listener != null)
+			listener.destroyed(removedComponent);
+
+		//Columnar mappers return a reused instance, and components in the fields of an entity stay with the entity.
+		ComponentPool<Component> pool = (ComponentPool<Component>) componentPools.get(componentClass);
+		if (pool != null && mapper.storesComponents() && !world.isDeclaredComponent(e, componentId))
+			pool.free(removedComponent);
+	}
+
 	/**
 	 * Add the given components to this entity, updating its Family.
 	 * Does not add the entity to the systems yet.
 	 */
 	void addComponent(Entity e, Component... components) {
-		//Copy the old componentBits.
-		RECSBits newComponentBits = new RECSBits(e.family.componentBits);
+		addComponents(e, components, components.length);
+	}
+
+	/** Add the first count components of the array to the entity */
+	void addComponents(Entity e, Component[] components, int count) {
+		EntityFamily family = e.family;
 
-		////Update componentbits.
 		//For every component added
-		for(Component component: components) {
+		for (int i = 0; i < count; i++) {
+			Component component = components[i];
 			//Get its id
 			int componentId = getComponentId(component.getClass());
 
@@ -126,14 +222,11 @@ public final class ComponentManager {
 				throw new RuntimeException("Unregistered component added: " + component.getClass().getName());
 			mapper.add(e.id, component);
 
-			//set the id in the componentBits
-			newComponentBits.set(componentId);
+			//Follow the cached transition to the family with the component
+			family = family.getAddTransition(componentId);
 		}
 
-		//Retrieve a new EntityData object matching the new set of components.
-		EntityFamily newData = world.getEntityFamily(newComponentBits);
-
-		e.family = newData;
+		e.family = family;
 	}
 
 	/**
@@ -141,12 +234,16 @@ public final class ComponentManager {
 	 * Does not remove the entity from the systems yet.
 	 */
 	void removeComponent(Entity e, Component... components) {
-		//Copy the old componentBits.
-		RECSBits newComponentBits = new RECSBits(e.family.componentBits);
+		removeComponents(e, components, components.length);
+	}
 
-		////Update componentbits.
-		//For every component added
-		for(Component component: components) {
+	/** Remove the first count components of the array from the entity */
+	void removeComponents(Entity e, Component[] components, int count) {
+		EntityFamily family = e.family;
+
+		//For every component removed
+		for (int i = 0; i < count; i++) {
+			Component component = components[i];
 			//Get its id
 			int componentId = getComponentId(component.getClass());
 
@@ -154,16 +251,15 @@ public final class ComponentManager {
 			ComponentMapper<?> mapper = getComponentMapper(componentId);
 			if (mapper == null)
 				throw new RuntimeException("Unregistered component added: " + component.getClass().getName());
-			mapper.remove(e.id);
+			Component removedComponent = mapper.remove(e.id);
+			if (removedComponent != null)
+				destroyComponent(e, componentId, mapper, removedComponent);
 
-			//remove the id from the componentBits
-			newComponentBits.clear(componentId);
+			//Follow the cached transition to the family without the component
+			family = family.getRemoveTransition(componentId);
 		}
 
-		//Retrieve a new EntityData object matching the new set of components.
-		EntityFamily newData = world.getEntityFamily(newComponentBits);
-
-		e.family = newData;
+		e.family = family;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -1,47 +1,131 @@
 package recs;
 
-import com.badlogic.gdx.utils.IntMap;
-import com.badlogic.gdx.utils.IntMap.Keys;
-import com.badlogic.gdx.utils.IntMap.Values;
+import java.util.Iterator;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 
 /**
  * Used to easily retrieve components from entities.
  * Just declare this in a system (a field), the field will be instantiated by the world as soon
  * as the System is added to the world.
  *
+ * How the components are stored depends on the {@link ComponentStorage} the world uses for the
+ * component class, retrieval works the same for every type of storage.
+ *
  * @author Enrico van Oosten
  * @param <T>
  *            The component type this manager manages.
  */
-public final class ComponentMapper<T extends Component> {
-	final IntMap<T> components;
+public abstract class ComponentMapper<T extends Component> {
+	/** The id of the component class this mapper stores */
+	int componentId;
 
-	protected ComponentMapper() {
-		components = new IntMap<T>();
+	ComponentMapper() {
 	}
 
-	protected Component remove(int entityId) {
-		return components.remove(entityId);
+	/**
+	 * Returns false if the mapper only stores the values of the components instead of the
+	 * component objects, get() then returns a reused instance.
+	 */
+	boolean storesComponents() {
+		return true;
 	}
 
+	/**
+	 * Remove the component of the entity, returns the removed component or null if the entity did
+	 * not have one.
+	 */
+	abstract Component remove(int entityId);
+
+	/**
+	 * Add or replace the component of the entity.
+	 */
+	abstract void add(int entityId, Component o);
+
+	/**
+	 * Make room for the given number of components of entities with ids up to maxEntityId,
+	 * called before adding many entities at once.
+	 */
+	abstract void ensureCapacity(int maxEntityId, int additionalComponents);
+
 	/**
 	 * Retrieve a component using an entityId, returns null if the component does
 	 * not exist.
 	 */
-	public T get(int id) {
-		return components.get(id);
-	}
+	public abstract T get(int id);
 
-	public Keys getIds() {
-		return components.keys();
-	}
+	/**
+	 * Get the number of components stored in this mapper.
+	 */
+	public abstract int size();
+
+	/**
+	 * Iterate the ids of all the entities that have a component in this mapper. The returned
+	 * iterator is reused by every call.
+	 */
+	public abstract Ids getIds();
 
-	public Values<T> getComponents() {
-		return components.values();
+	/**
+	 * Iterate all the components in this mapper. The returned iterator is reused by every call.
+	 */
+	public abstract Components<T> getComponents();
+
+	/**
+	 * Create an iterator over the ids of this mapper which is not shared with getIds().
+	 */
+	abstract Ids newIds();
+
+	/**
+	 * Create an iterator over the components of this mapper which is not shared with
+	 * getComponents(), also not the instance it fills if the mapper only stores values.
+	 */
+	abstract Components<T> newComponents();
+
+	/**
+	 * Iterator over the entity ids of a mapper, used like the keys iterator of an IntMap.
+	 */
+	public static abstract class Ids {
+		public boolean hasNext;
+
+		/**
+		 * Start iterating from the first id again.
+		 */
+		public abstract void reset();
+
+		public abstract int next();
+
+		public IntArray toArray() {
+			IntArray array = new IntArray(true, 16);
+			while (hasNext)
+				array.add(next());
+			return array;
+		}
 	}
 
-	@SuppressWarnings("unchecked")
-	void add(int entityId, Component o) {
-		components.put(entityId, (T) o);
+	/**
+	 * Iterator over the components of a mapper, used like the values iterator of an IntMap.
+	 */
+	public static abstract class Components<T> implements Iterable<T>, Iterator<T> {
+
+		/**
+		 * Start iterating from the first component again.
+		 */
+		public abstract void reset();
+
+		public Iterator<T> iterator() {
+			return this;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Remove components through the entity");
+		}
+
+		public Array<T> toArray() {
+			Array<T> array = new Array<T>(true, 16);
+			while (hasNext())
+				array.add(next());
+			return array;
+		}
 	}
 }
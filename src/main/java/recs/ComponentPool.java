@@ -0,0 +1,98 @@
+package recs;
+
+import java.lang.reflect.ParameterizedType;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Pool of components of a single class. Once registered to a world, components of that class
+ * removed from the world are reset and put back into the pool, and can be reused through
+ * {@link #obtain()} or {@link EntityWorld#obtainComponent(Class)}.
+ *
+ * Components held in the fields of an Entity subclass stay with their entity and are not pooled.
+ * Do not keep references to a component after it was removed from the world.
+ *
+ * <pre>
+ * new ComponentPool&lt;Projectile&gt;(world, 1000) {
+ *     protected Projectile newComponent() {
+ *         return new Projectile();
+ *     }
+ *
+ *     protected void reset(Projectile projectile) {
+ *         projectile.damage = 0;
+ *     }
+ * };
+ * </pre>
+ *
+ * @author Enrico van Oosten
+ */
+public abstract class ComponentPool<T extends Component> {
+	private final Array<T> freeComponents;
+	/** The maximum number of free components kept in the pool */
+	private final int max;
+
+	/**
+	 * Create a pool without a limit on the number of free components.
+	 */
+	public ComponentPool(EntityWorld world) {
+		this(world, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a pool keeping at most max free components, components freed to a full pool are
+	 * left for the garbage collector.
+	 */
+	public ComponentPool(EntityWorld world, int max) {
+		//Reflection hax for clean api, other option is passing a class as parameter.
+		@SuppressWarnings("unchecked")
+		Class<T> genericParameter = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+
+		this.max = max;
+		freeComponents = new Array<T>(false, Math.min(max, 16));
+		world.registerComponentPool(this, genericParameter);
+	}
+
+	/**
+	 * Create a new component, called when the pool is empty.
+	 */
+	protected abstract T newComponent();
+
+	/**
+	 * Called when a component is put back into the pool, override to clear its values.
+	 */
+	protected void reset(T component) {
+	}
+
+	/**
+	 * Take a component from the pool, or create a new one if the pool is empty.
+	 */
+	public synchronized T obtain() {
+		return freeComponents.size == 0 ? newComponent() : freeComponents.pop();
+	}
+
+	/**
+	 * Reset the component and put it into the pool, unless the pool is full.
+	 */
+	public synchronized void free(T component) {
+		if (component == null)
+			throw new IllegalArgumentException("component cannot be null.");
+		if (freeComponents.size < max) {
+			reset(component);
+			freeComponents.add(component);
+		}
+	}
+
+	/**
+	 * The number of components in the pool.
+	 */
+	public synchronized int getFree() {
+		return freeComponents.size;
+	}
+
+	/**
+	 * Remove all the free components from the pool.
+	 */
+	public synchronized void clear() {
+		freeComponents.clear();
+	}
+}
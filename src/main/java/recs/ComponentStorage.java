@@ -0,0 +1,38 @@
+package recs;
+
+/**
+ * The ways a ComponentMapper can store its components.
+ *
+ * @author Enrico van Oosten
+ */
+public enum ComponentStorage {
+	/**
+	 * Components are stored in a hash map keyed by the entity id. Uses the least memory when only
+	 * a few entities have the component.
+	 */
+	HASHED,
+	/**
+	 * Components are stored in an array indexed directly by the entity id. Retrieval is a single
+	 * array access, but the array is as large as the highest entity id that has the component.
+	 */
+	DENSE,
+	/**
+	 * Components are stored in a sparse set, packed arrays of entity ids and components with a
+	 * sparse index by entity id. Retrieval is two array accesses and iterating all components
+	 * is a loop over the packed arrays, see {@link SparseComponentMapper}.
+	 */
+	SPARSE_SET,
+	/**
+	 * The fields of the components are stored in one primitive array per field, indexed by entity
+	 * id. Only for component classes with nothing but primitive fields and a constructor without
+	 * arguments, so it can only be set per component class. The component objects themselves are
+	 * not kept, see {@link ColumnarComponentMapper}.
+	 */
+	COLUMNAR,
+	/**
+	 * The fields of the components are stored outside of the java heap in a direct ByteBuffer,
+	 * one record per entity id. Has the same requirements as COLUMNAR, see
+	 * {@link OffHeapComponentMapper}.
+	 */
+	OFF_HEAP
+}
@@ -0,0 +1,145 @@
+package recs;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ComponentMapper storing its components in an array indexed by entity id.
+ * See {@link ComponentStorage#DENSE}
+ *
+ * @author Enrico van Oosten
+ */
+final class DenseComponentMapper<T extends Component> extends ComponentMapper<T> {
+	/** Component of every entity id, null if the entity does not have one */
+	Component[] components;
+	private int size = 0;
+
+	private final DenseIds idIterator;
+	private final DenseComponents componentIterator;
+
+	DenseComponentMapper() {
+		components = new Component[16];
+		idIterator = new DenseIds();
+		componentIterator = new DenseComponents();
+	}
+
+	@Override
+	Component remove(int entityId) {
+		if (entityId >= components.length)
+			return null;
+		Component removed = components[entityId];
+		if (removed != null) {
+			components[entityId] = null;
+			size--;
+		}
+		return removed;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int id) {
+		if (id >= components.length)
+			return null;
+		return (T) components[id];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Ids getIds() {
+		idIterator.reset();
+		return idIterator;
+	}
+
+	@Override
+	public Components<T> getComponents() {
+		componentIterator.reset();
+		return componentIterator;
+	}
+
+	@Override
+	Ids newIds() {
+		return new DenseIds();
+	}
+
+	@Override
+	Components<T> newComponents() {
+		return new DenseComponents();
+	}
+
+	@Override
+	void ensureCapacity(int maxEntityId, int additionalComponents) {
+		if (maxEntityId >= components.length)
+			grow(maxEntityId + 1);
+	}
+
+	@Override
+	void add(int entityId, Component o) {
+		if (entityId >= components.length)
+			grow(entityId + 1);
+		if (components[entityId] == null)
+			size++;
+		components[entityId] = o;
+	}
+
+	/** Make sure an entity with the given id can be stored without resizing */
+	private void grow(int minCapacity) {
+		Component[] newComponents = new Component[Math.max(minCapacity, components.length * 2)];
+		System.arraycopy(components, 0, newComponents, 0, components.length);
+		components = newComponents;
+	}
+
+	/** Returns the first index on or after the given index that holds a component, or -1 */
+	private int nextIndex(int fromIndex) {
+		Component[] components = this.components;
+		for (int i = fromIndex, max = components.length; i < max; i++) {
+			if (components[i] != null)
+				return i;
+		}
+		return -1;
+	}
+
+	private final class DenseIds extends Ids {
+		private int nextIndex;
+
+		@Override
+		public void reset() {
+			nextIndex = nextIndex(0);
+			hasNext = nextIndex != -1;
+		}
+
+		@Override
+		public int next() {
+			if (!hasNext)
+				throw new NoSuchElementException();
+			int id = nextIndex;
+			nextIndex = nextIndex(id + 1);
+			hasNext = nextIndex != -1;
+			return id;
+		}
+	}
+
+	private final class DenseComponents extends Components<T> {
+		private int nextIndex;
+
+		@Override
+		public void reset() {
+			nextIndex = nextIndex(0);
+		}
+
+		public boolean hasNext() {
+			return nextIndex != -1;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (nextIndex == -1)
+				throw new NoSuchElementException();
+			T component = (T) components[nextIndex];
+			nextIndex = nextIndex(nextIndex + 1);
+			return component;
+		}
+	}
+}
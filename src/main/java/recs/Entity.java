@@ -1,8 +1,5 @@
 package recs;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import recs.utils.RECSBits;
 
 /**
@@ -16,6 +13,19 @@ import recs.utils.RECSBits;
 public class Entity {
 	int id;
 	EntityFamily family = null;
+	/** Position of this entity in the chunks of its family */
+	int familyIndex = -1;
+	/** Reflection data of the class of this entity, kept so a pooled entity can be added again without a lookup */
+	EntityReflectionCache reflection = null;
+
+	/**
+	 * Components added to and removed from this entity before it was added to a world, applied
+	 * by addEntity. The arrays are kept so a pooled entity can stage components without allocating.
+	 */
+	Component[] stagedAdds;
+	int stagedAddCount = 0;
+	Component[] stagedRemoves;
+	int stagedRemoveCount = 0;
 
 	/**
 	 * Add an component to this entity.
@@ -32,6 +42,16 @@ public class Entity {
 		return id;
 	}
 
+	/**
+	 * Get a handle of this entity that stays unique after the entity is removed and its id is
+	 * reused, see {@link EntityWorld#isValid(long)}.
+	 */
+	public long getHandle() {
+		if (family == null)
+			throw new IllegalStateException("Entity will not have a handle until it is added to a world");
+		return family.world.getEntityHandle(id);
+	}
+
 	public <T extends Component> boolean hasComponent(Class<T> componentClass) {
 		if (family == null) {	// not yet added to a world
 			for (Component component : getComponents()) {
@@ -88,10 +108,18 @@ public class Entity {
 	 * components.
 	 */
 	public Component[] getComponents() {
-		if(family == null) { // not yet added to a world, use the scheduled add/remove data.
-			List<Component> results = new ArrayList<Component>(EntityWorld.getScheduledAdds(this));
-			results.removeAll(EntityWorld.getScheduledRemoves(this));
-			return results.toArray(new Component[results.size()]);
+		if(family == null) { // not yet added to a world, use the staged add/remove data.
+			Component[] results = new Component[stagedAddCount];
+			int count = 0;
+			for (int i = 0; i < stagedAddCount; i++) {
+				if (!isStagedRemove(stagedAdds[i]))
+					results[count++] = stagedAdds[i];
+			}
+			if (count == results.length)
+				return results;
+			Component[] components = new Component[count];
+			System.arraycopy(results, 0, components, 0, count);
+			return components;
 		}
 
 		int[] componentIds = getComponentIds();
@@ -102,4 +130,44 @@ public class Entity {
 
 		return components;
 	}
+
+	private boolean isStagedRemove(Component component) {
+		for (int i = 0; i < stagedRemoveCount; i++)
+			if (stagedRemoves[i] == component)
+				return true;
+		return false;
+	}
+
+	/** Stage components to be added once this entity is added to a world */
+	void stageAdd(Component[] components) {
+		if (stagedAdds == null || stagedAddCount + components.length > stagedAdds.length)
+			stagedAdds = grow(stagedAdds, stagedAddCount, stagedAddCount + components.length);
+		System.arraycopy(components, 0, stagedAdds, stagedAddCount, components.length);
+		stagedAddCount += components.length;
+	}
+
+	/** Stage components to be removed once this entity is added to a world */
+	void stageRemove(Component[] components) {
+		if (stagedRemoves == null || stagedRemoveCount + components.length > stagedRemoves.length)
+			stagedRemoves = grow(stagedRemoves, stagedRemoveCount, stagedRemoveCount + components.length);
+		System.arraycopy(components, 0, stagedRemoves, stagedRemoveCount, components.length);
+		stagedRemoveCount += components.length;
+	}
+
+	private static Component[] grow(Component[] array, int count, int minCapacity) {
+		Component[] newArray = new Component[Math.max(4, Math.max(minCapacity, count * 2))];
+		if (array != null)
+			System.arraycopy(array, 0, newArray, 0, count);
+		return newArray;
+	}
+
+	/** Drop the staged components after they were applied, keeping the arrays for reuse */
+	void clearStagedComponents() {
+		for (int i = 0; i < stagedAddCount; i++)
+			stagedAdds[i] = null;
+		for (int i = 0; i < stagedRemoveCount; i++)
+			stagedRemoves[i] = null;
+		stagedAddCount = 0;
+		stagedRemoveCount = 0;
+	}
 }
@@ -0,0 +1,46 @@
+package recs;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * A set of component classes, used to create or remove many entities with exactly those
+ * components at once. Retrieve one with {@link EntityWorld#getArchetype(Class...)}.
+ *
+ * @author Enrico van Oosten
+ */
+public final class EntityArchetype {
+	final EntityWorld world;
+	final Class<? extends Component>[] componentClasses;
+	/** Constructors without arguments of the component classes, created when first needed */
+	private Constructor<?>[] constructors;
+
+	EntityArchetype(EntityWorld world, Class<? extends Component>[] componentClasses) {
+		this.world = world;
+		this.componentClasses = componentClasses;
+	}
+
+	/**
+	 * Create a component of the class at the given index, taking it from the ComponentPool of
+	 * the class if there is one.
+	 */
+	Component newComponent(int index) {
+		Class<? extends Component> componentClass = componentClasses[index];
+		ComponentPool<? extends Component> pool = world.getComponentPool(componentClass);
+		if (pool != null)
+			return pool.obtain();
+		try {
+			if (constructors == null)
+				constructors = new Constructor<?>[componentClasses.length];
+			if (constructors[index] == null) {
+				constructors[index] = componentClass.getDeclaredConstructor();
+				constructors[index].setAccessible(true);
+			}
+			return (Component) constructors[index].newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Component " + componentClass.getName()
+					+ " requires a ComponentPool or a constructor without arguments");
+		} catch (Exception e) {
+			throw new RuntimeException("Could not create " + componentClass.getName(), e);
+		}
+	}
+}
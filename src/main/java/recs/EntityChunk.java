@@ -0,0 +1,70 @@
+package recs;
+
+/**
+ * A fixed size block of entities of the same EntityFamily. When the world uses archetype storage,
+ * a chunk also holds the components of its entities in one array per component class, so all the
+ * components of a family can be iterated chunk by chunk.
+ *
+ * Entities are packed at the start of the chunk, the slot of an entity changes when entities of
+ * its family are removed.
+ *
+ * @author Enrico van Oosten
+ */
+public final class EntityChunk {
+	/**
+	 * The maximum number of entities in a chunk.
+	 */
+	public static final int CAPACITY = 128;
+
+	final EntityFamily family;
+	final Entity[] entities = new Entity[CAPACITY];
+	final int[] ids = new int[CAPACITY];
+	/** One array of components for every component of the family, null without archetype storage */
+	final Component[][] columns;
+	int size = 0;
+
+	EntityChunk(EntityFamily family, boolean withColumns) {
+		this.family = family;
+		if (withColumns) {
+			columns = new Component[family.componentIds.length][];
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = new Component[CAPACITY];
+		} else {
+			columns = null;
+		}
+	}
+
+	/**
+	 * The number of entities in this chunk.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the entity in the given slot.
+	 */
+	public Entity getEntity(int index) {
+		return entities[index];
+	}
+
+	/**
+	 * The ids of the entities in this chunk, packed in the first size() elements.
+	 */
+	public int[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * The components of the mappers class for every entity in this chunk, packed in the first
+	 * size() elements in the same order as getIds(). Returns null if the world does not use
+	 * archetype storage, if the family does not have the component, or if the mapper does not
+	 * keep component objects (columnar and off heap storage).
+	 */
+	public Component[] getColumn(ComponentMapper<?> mapper) {
+		if (columns == null)
+			return null;
+		int column = family.getColumn(mapper.componentId);
+		return column == -1 ? null : columns[column];
+	}
+}
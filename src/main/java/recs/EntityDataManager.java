@@ -4,6 +4,7 @@ import java.lang.reflect.Field;
 
 import recs.utils.RECSBits;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.ObjectMap;
 
@@ -15,8 +16,17 @@ public final class EntityDataManager {
 	private EntityWorld world;
 	/** Maps class to reflection data of that class */
 	private ObjectMap<Class<? extends Entity>, EntityReflectionCache> reflectionMap = new ObjectMap<Class<? extends Entity>, EntityReflectionCache>();
-	/** Maps component bits to family */
-	private ObjectMap<RECSBits, EntityFamily> entityFamilyMap = new ObjectMap<RECSBits, EntityFamily>();
+	/** Maps class to the pool its removed entities are put into */
+	private ObjectMap<Class<? extends Entity>, EntityPool<?>> entityPools = new ObjectMap<Class<? extends Entity>, EntityPool<?>>();
+	/**
+	 * Open addressing table of the families by the hash of their FamilyKey, looked up with the
+	 * component bits directly so finding an existing family does not allocate.
+	 */
+	private EntityFamily[] familyTable = new EntityFamily[32];
+	/** All the families, in order of creation */
+	private Array<EntityFamily> families = new Array<EntityFamily>(false, 16, EntityFamily.class);
+	/** If the chunks of the families store the components of their entities */
+	private boolean archetypeStorage = false;
 
 	EntityDataManager(EntityWorld world) {
 		this.world = world;
@@ -31,28 +41,115 @@ public final class EntityDataManager {
 		return reflectionData;
 	}
 
+	/** Get the reflection data of the class of the entity, reusing the data the entity was added with if possible. */
+	EntityReflectionCache getReflection(Entity e) {
+		EntityReflectionCache reflection = e.reflection;
+		if (reflection == null || !reflection.valid || reflection.family.world != world) {
+			reflection = getReflection(e.getClass());
+			e.reflection = reflection;
+		}
+		return reflection;
+	}
+
+	/** Returns true if the component is held by a field of the class of the entity. */
+	boolean isDeclaredComponent(Entity e, int componentId) {
+		if (e.getClass() == Entity.class)
+			return false;
+		return getReflection(e).componentFields.containsKey(componentId);
+	}
+
+	/** Register a pool that receives the removed entities of the given class */
+	void registerEntityPool(EntityPool<?> pool, Class<? extends Entity> entityClass) {
+		entityPools.put(entityClass, pool);
+	}
+
+	/** Retrieve the pool that receives the removed entities of the given class */
+	@SuppressWarnings("unchecked")
+	<T extends Entity> EntityPool<T> getEntityPool(Class<T> entityClass) {
+		return (EntityPool<T>) entityPools.get(entityClass);
+	}
+
 	/** Retrieve an EntityFamily object matching the set of components. */
 	EntityFamily getEntityFamily(RECSBits componentBits) {
-		EntityFamily data = entityFamilyMap.get(componentBits);
-		if (data == null) {
-			RECSBits systemBits = world.getSystemBits(componentBits);
-			data = new EntityFamily(world, componentBits, systemBits);
-			entityFamilyMap.put(componentBits, data);
+		int mask = familyTable.length - 1;
+		int index = FamilyKey.hash(componentBits) & mask;
+		for (EntityFamily family = familyTable[index]; family != null; family = familyTable[index]) {
+			if (family.key.matches(componentBits))
+				return family;
+			index = (index + 1) & mask;
 		}
+
+		//Families keep their own copy of the bits, the given bits may be changed by the caller.
+		RECSBits familyBits = new RECSBits(componentBits);
+		RECSBits systemBits = world.getSystemBits(familyBits);
+		EntityFamily data = new EntityFamily(world, familyBits, systemBits, archetypeStorage);
+		families.add(data);
+		if (families.size * 2 > familyTable.length)
+			rehash(familyTable.length * 2);
+		else
+			familyTable[index] = data;
 		return data;
 	}
 
+	/** Put all the families in a new table of the given size */
+	private void rehash(int size) {
+		familyTable = new EntityFamily[size];
+		int mask = size - 1;
+		for (int i = 0; i < families.size; i++) {
+			EntityFamily family = families.items[i];
+			int index = family.key.hash & mask;
+			while (familyTable[index] != null)
+				index = (index + 1) & mask;
+			familyTable[index] = family;
+		}
+	}
+
+	/** Set if the chunks of families store the components of their entities */
+	void setArchetypeStorage(boolean archetypeStorage) {
+		if (families.size != 0)
+			throw new IllegalStateException("Archetype storage has to be set before entities are added");
+		this.archetypeStorage = archetypeStorage;
+	}
+
+	/** The number of families, families are never removed until the world is reset */
+	int getFamilyCount() {
+		return families.size;
+	}
+
+	/** Add the families matching the query to the array, starting from the family with the given index */
+	void getFamilies(EntityQuery query, int fromIndex, Array<EntityFamily> out) {
+		for (int i = fromIndex; i < families.size; i++) {
+			EntityFamily family = families.items[i];
+			if (query.matches(family))
+				out.add(family);
+		}
+	}
+
+	/** Is called on addSystem to set the system bit of the matching families and add their entities to the system */
+	void addSystem(EntitySystem system) {
+		for (int i = 0; i < families.size; i++) {
+			EntityFamily family = families.items[i];
+			if (system.matches(family)) {
+				family.systemBits.set(system.getId());
+				family.addEntitiesTo(system);
+			}
+		}
+	}
+
 	/** Is called on removeSystem to remove the matching system bit from all entities */
 	void removeSystem(int id) {
-		for(EntityFamily data: entityFamilyMap.values()) {
-			data.systemBits.clear(id);
-		}
+		for (int i = 0; i < families.size; i++)
+			families.items[i].systemBits.clear(id);
 	}
 
 	/** Wipes all the data */
 	void clear() {
-		entityFamilyMap.clear();
+		familyTable = new EntityFamily[32];
+		families.clear();
+		for (EntityReflectionCache reflection : reflectionMap.values())
+			reflection.valid = false;
 		reflectionMap.clear();
+		entityPools.clear();
 	}
 
 	/**
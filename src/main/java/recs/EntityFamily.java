@@ -2,10 +2,13 @@ package recs;
 
 import recs.utils.RECSBits;
 
+import com.badlogic.gdx.utils.Array;
+
 /**
  * Class used to store which components an entity has, and what systems it belongs to.
  *
- * Is shared between entities with the same set of components.
+ * Is shared between entities with the same set of components, and keeps those entities in
+ * chunks so they can be iterated family by family.
  *
  * @author Enrico
  */
@@ -13,10 +16,224 @@ public final class EntityFamily {
 	final EntityWorld world;
 	final RECSBits componentBits;
 	final RECSBits systemBits;
+	/** The interned key of the components of this family */
+	final FamilyKey key;
+	/**
+	 * The components of this family as a single word, used instead of the componentBits when
+	 * all the component ids of the family are below 64, which is the case in most worlds.
+	 */
+	final boolean singleWord;
+	final long componentWord;
+
+	/** The ids of the components of this family in ascending order, one chunk column per id */
+	final int[] componentIds;
+	/** Maps a component id to its column in the chunks, -1 if the family does not have it */
+	private final int[] columnIndices;
+	/** Chunks holding the entities of this family, only the last chunk is not full */
+	private final Array<EntityChunk> chunks = new Array<EntityChunk>(false, 1, EntityChunk.class);
+	private final boolean withColumns;
+	private int size = 0;
+
+	/**
+	 * The families reached by adding or removing a component, indexed by component id and filled
+	 * in when the transition is first made.
+	 */
+	private EntityFamily[] addTransitions = new EntityFamily[0];
+	private EntityFamily[] removeTransitions = new EntityFamily[0];
 
-	EntityFamily(EntityWorld world, RECSBits componentBits, RECSBits systemBits) {
+	EntityFamily(EntityWorld world, RECSBits componentBits, RECSBits systemBits, boolean withColumns) {
 		this.world = world;
 		this.componentBits = componentBits;
+		this.key = new FamilyKey(componentBits);
+		this.singleWord = componentBits.wordCount() <= 1;
+		this.componentWord = componentBits.getWord(0);
 		this.systemBits = systemBits;
+		this.withColumns = withColumns;
+
+		componentIds = new int[componentBits.cardinality()];
+		int maxComponentId = 0;
+		for (int i = componentBits.nextSetBit(0), idx = 0; i >= 0; i = componentBits.nextSetBit(i + 1)) {
+			componentIds[idx++] = i;
+			maxComponentId = i;
+		}
+		columnIndices = new int[maxComponentId + 1];
+		for (int i = 0; i < columnIndices.length; i++)
+			columnIndices[i] = -1;
+		for (int i = 0; i < componentIds.length; i++)
+			columnIndices[componentIds[i]] = i;
+	}
+
+	/**
+	 * The number of entities in this family.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getChunkCount() {
+		return chunks.size;
+	}
+
+	public EntityChunk getChunk(int index) {
+		return chunks.items[index];
+	}
+
+	/** Returns the column of the component in the chunks of this family, or -1 */
+	int getColumn(int componentId) {
+		return componentId < columnIndices.length ? columnIndices[componentId] : -1;
+	}
+
+	/** Add all the entities of this family to the system, chunk by chunk */
+	void addEntitiesTo(EntitySystem system) {
+		system.entityIds.ensureCapacity(size);
+		for (int i = 0; i < chunks.size; i++) {
+			EntityChunk chunk = chunks.items[i];
+			system.addEntities(chunk.ids, chunk.size);
+		}
+	}
+
+	/** Get the family of an entity of this family after the given component is added */
+	EntityFamily getAddTransition(int componentId) {
+		if (componentId < addTransitions.length && addTransitions[componentId] != null)
+			return addTransitions[componentId];
+		RECSBits newComponentBits = new RECSBits(componentBits);
+		newComponentBits.set(componentId);
+		EntityFamily family = world.getEntityFamily(newComponentBits);
+		addTransitions = setTransition(addTransitions, componentId, family);
+		return family;
+	}
+
+	/** Get the family of an entity of this family after the given component is removed */
+	EntityFamily getRemoveTransition(int componentId) {
+		if (componentId < removeTransitions.length && removeTransitions[componentId] != null)
+			return removeTransitions[componentId];
+		RECSBits newComponentBits = new RECSBits(componentBits);
+		newComponentBits.clear(componentId);
+		EntityFamily family = world.getEntityFamily(newComponentBits);
+		removeTransitions = setTransition(removeTransitions, componentId, family);
+		return family;
+	}
+
+	private static EntityFamily[] setTransition(EntityFamily[] transitions, int componentId, EntityFamily family) {
+		if (componentId >= transitions.length) {
+			EntityFamily[] newTransitions = new EntityFamily[componentId + 8];
+			System.arraycopy(transitions, 0, newTransitions, 0, transitions.length);
+			transitions = newTransitions;
+		}
+		transitions[componentId] = family;
+		return transitions;
+	}
+
+	/** Add an entity to the last chunk of this family */
+	void addEntity(Entity e) {
+		int index = size++;
+		int slot = index % EntityChunk.CAPACITY;
+		if (index / EntityChunk.CAPACITY == chunks.size)
+			chunks.add(new EntityChunk(this, withColumns));
+		EntityChunk chunk = chunks.items[index / EntityChunk.CAPACITY];
+		chunk.entities[slot] = e;
+		chunk.ids[slot] = e.id;
+		chunk.size++;
+		e.familyIndex = index;
+		if (withColumns)
+			readComponents(e, chunk, slot);
+	}
+
+	/** Remove an entity, moving the last entity of the family into its slot */
+	void removeEntity(Entity e) {
+		int index = e.familyIndex;
+		int last = --size;
+		EntityChunk chunk = chunks.items[index / EntityChunk.CAPACITY];
+		EntityChunk lastChunk = chunks.items[last / EntityChunk.CAPACITY];
+		int slot = index % EntityChunk.CAPACITY;
+		int lastSlot = last % EntityChunk.CAPACITY;
+
+		if (index != last) {
+			Entity moved = lastChunk.entities[lastSlot];
+			chunk.entities[slot] = moved;
+			chunk.ids[slot] = moved.id;
+			if (withColumns) {
+				for (int i = 0; i < componentIds.length; i++)
+					chunk.columns[i][slot] = lastChunk.columns[i][lastSlot];
+			}
+			moved.familyIndex = index;
+		}
+		lastChunk.entities[lastSlot] = null;
+		if (withColumns) {
+			for (int i = 0; i < componentIds.length; i++)
+				lastChunk.columns[i][lastSlot] = null;
+		}
+		lastChunk.size--;
+		//Keep one empty chunk around so an entity toggling between families does not allocate.
+		int usedChunks = (size + EntityChunk.CAPACITY - 1) / EntityChunk.CAPACITY;
+		if (chunks.size > usedChunks + 1)
+			chunks.pop();
+		e.familyIndex = -1;
+	}
+
+	/**
+	 * Remove multiple entities of this family, compacting the chunks once afterwards: the
+	 * entities left behind the new end of the family are moved into the freed slots before it.
+	 */
+	void removeEntities(Entity[] removed, int count) {
+		int newSize = size - count;
+		//Clear the slots of the removed entities and remember the ones that need to be filled.
+		int[] holes = new int[count];
+		int numHoles = 0;
+		for (int i = 0; i < count; i++) {
+			Entity e = removed[i];
+			int index = e.familyIndex;
+			clearSlot(chunks.items[index / EntityChunk.CAPACITY], index % EntityChunk.CAPACITY);
+			if (index < newSize)
+				holes[numHoles++] = index;
+			e.familyIndex = -1;
+		}
+		//Every entity still at or past the new size fills one of the holes.
+		for (int index = newSize, hole = 0; index < size; index++) {
+			EntityChunk chunk = chunks.items[index / EntityChunk.CAPACITY];
+			int slot = index % EntityChunk.CAPACITY;
+			if (chunk.entities[slot] != null)
+				moveSlot(chunk, slot, holes[hole++]);
+		}
+		size = newSize;
+		for (int i = 0; i < chunks.size; i++)
+			chunks.items[i].size = Math.max(0, Math.min(EntityChunk.CAPACITY, size - i * EntityChunk.CAPACITY));
+		int usedChunks = (size + EntityChunk.CAPACITY - 1) / EntityChunk.CAPACITY;
+		chunks.truncate(usedChunks + 1);
+	}
+
+	private void moveSlot(EntityChunk from, int fromSlot, int toIndex) {
+		EntityChunk to = chunks.items[toIndex / EntityChunk.CAPACITY];
+		int toSlot = toIndex % EntityChunk.CAPACITY;
+		Entity moved = from.entities[fromSlot];
+		to.entities[toSlot] = moved;
+		to.ids[toSlot] = moved.id;
+		if (withColumns) {
+			for (int i = 0; i < componentIds.length; i++)
+				to.columns[i][toSlot] = from.columns[i][fromSlot];
+		}
+		moved.familyIndex = toIndex;
+		clearSlot(from, fromSlot);
+	}
+
+	private void clearSlot(EntityChunk chunk, int slot) {
+		chunk.entities[slot] = null;
+		if (withColumns) {
+			for (int i = 0; i < componentIds.length; i++)
+				chunk.columns[i][slot] = null;
+		}
+	}
+
+	/** Read the components of the entity again, after one of its components was replaced */
+	void updateEntity(Entity e) {
+		if (withColumns)
+			readComponents(e, chunks.items[e.familyIndex / EntityChunk.CAPACITY], e.familyIndex % EntityChunk.CAPACITY);
+	}
+
+	private void readComponents(Entity e, EntityChunk chunk, int slot) {
+		for (int i = 0; i < componentIds.length; i++) {
+			ComponentMapper<?> mapper = world.getComponentMapper(componentIds[i]);
+			chunk.columns[i][slot] = mapper.storesComponents() ? mapper.get(e.id) : null;
+		}
 	}
 }
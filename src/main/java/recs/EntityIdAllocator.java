@@ -0,0 +1,79 @@
+package recs;
+
+/**
+ * Hands out entity ids in constant time. Freed ids are reused before new ids are handed out,
+ * so the ids stay as small as the highest number of entities that existed at the same time.
+ *
+ * Every id has a generation that is increased when the id is freed, a handle combining the id
+ * with its generation can be used to detect that an entity was removed, even if its id was reused.
+ *
+ * @author Enrico van Oosten
+ */
+final class EntityIdAllocator {
+	/** Stack of freed ids */
+	private int[] freeIds = new int[16];
+	private int numFreeIds = 0;
+	/** Generation of every id */
+	private int[] generations = new int[16];
+	/** The lowest id that was never handed out, id 0 is never used */
+	private int nextId = 1;
+
+	/** Get an unused id */
+	int obtain() {
+		if (numFreeIds > 0)
+			return freeIds[--numFreeIds];
+		int id = nextId++;
+		if (id == generations.length) {
+			int[] newGenerations = new int[generations.length * 2];
+			System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+			generations = newGenerations;
+		}
+		return id;
+	}
+
+	/**
+	 * Make sure the given number of ids can be handed out without resizing,
+	 * returns the highest id that handing them out can return.
+	 */
+	int ensureCapacity(int count) {
+		int maxId = nextId - 1 + Math.max(0, count - numFreeIds);
+		if (maxId >= generations.length) {
+			int[] newGenerations = new int[maxId + 1];
+			System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+			generations = newGenerations;
+		}
+		return maxId;
+	}
+
+	/** Free an id so it can be reused, invalidating the handles of the id */
+	void free(int id) {
+		generations[id]++;
+		if (numFreeIds == freeIds.length) {
+			int[] newFreeIds = new int[freeIds.length * 2];
+			System.arraycopy(freeIds, 0, newFreeIds, 0, numFreeIds);
+			freeIds = newFreeIds;
+		}
+		freeIds[numFreeIds++] = id;
+	}
+
+	/** Get a handle combining the id with its current generation */
+	long getHandle(int id) {
+		return ((long) generations[id] << 32) | (id & 0xffffffffL);
+	}
+
+	/** Returns the id of a handle if the id was not freed since the handle was created, -1 otherwise */
+	int getId(long handle) {
+		int id = (int) handle;
+		if (id <= 0 || id >= nextId || generations[id] != (int) (handle >>> 32))
+			return -1;
+		return id;
+	}
+
+	/** Forget all the handed out ids */
+	void clear() {
+		numFreeIds = 0;
+		nextId = 1;
+		for (int i = 0; i < generations.length; i++)
+			generations[i]++;
+	}
+}
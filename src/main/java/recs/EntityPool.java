@@ -0,0 +1,103 @@
+package recs;
+
+import java.lang.reflect.ParameterizedType;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Pool of entities of a single class. Once registered to a world, entities of exactly that
+ * class that are removed from the world are reset and put back into the pool, and can be added
+ * to the world again after taking them from the pool with {@link #obtain()} or
+ * {@link EntityWorld#obtainEntity(Class)}. Re-adding a pooled entity reuses the reflection data
+ * it was added with before.
+ *
+ * The components held in the fields of the entity stay with the entity, use reset() to give them
+ * their initial values. Do not keep references to an entity after it was removed from the world.
+ *
+ * <pre>
+ * new EntityPool&lt;Bullet&gt;(world, 1000) {
+ *     protected Bullet newEntity() {
+ *         return new Bullet();
+ *     }
+ *
+ *     protected void reset(Bullet bullet) {
+ *         bullet.position.x = 0;
+ *     }
+ * };
+ * </pre>
+ *
+ * @author Enrico van Oosten
+ */
+public abstract class EntityPool<T extends Entity> {
+	private final Array<T> freeEntities;
+	/** The maximum number of free entities kept in the pool */
+	private final int max;
+
+	/**
+	 * Create a pool without a limit on the number of free entities.
+	 */
+	public EntityPool(EntityWorld world) {
+		this(world, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a pool keeping at most max free entities, entities freed to a full pool are left
+	 * for the garbage collector.
+	 */
+	public EntityPool(EntityWorld world, int max) {
+		//Reflection hax for clean api, other option is passing a class as parameter.
+		@SuppressWarnings("unchecked")
+		Class<T> genericParameter = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+
+		this.max = max;
+		freeEntities = new Array<T>(false, Math.min(max, 16));
+		world.registerEntityPool(this, genericParameter);
+	}
+
+	/**
+	 * Create a new entity, called when the pool is empty.
+	 */
+	protected abstract T newEntity();
+
+	/**
+	 * Called when an entity is put back into the pool, override to reset its components.
+	 */
+	protected void reset(T entity) {
+	}
+
+	/**
+	 * Take an entity from the pool, or create a new one if the pool is empty.
+	 */
+	public synchronized T obtain() {
+		return freeEntities.size == 0 ? newEntity() : freeEntities.pop();
+	}
+
+	/**
+	 * Reset the entity and put it into the pool, unless the pool is full. Entities are freed
+	 * automatically when they are removed from the world.
+	 */
+	public synchronized void free(T entity) {
+		if (entity == null)
+			throw new IllegalArgumentException("entity cannot be null.");
+		if (entity.family != null)
+			throw new IllegalArgumentException("Entity is still added to a world: " + entity.id);
+		if (freeEntities.size < max) {
+			reset(entity);
+			freeEntities.add(entity);
+		}
+	}
+
+	/**
+	 * The number of entities in the pool.
+	 */
+	public synchronized int getFree() {
+		return freeEntities.size;
+	}
+
+	/**
+	 * Remove all the free entities from the pool.
+	 */
+	public synchronized void clear() {
+		freeEntities.clear();
+	}
+}
@@ -0,0 +1,154 @@
+package recs;
+
+import recs.utils.RECSBits;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Matches the entities of a world by the components they have:
+ *
+ * <pre>
+ * EntityQuery query = world.query().all(Position.class, Velocity.class).any(Player.class, Enemy.class).none(Stunned.class);
+ * </pre>
+ *
+ * The result of a query is kept per EntityFamily, entities moving between families change the
+ * result without the query doing any work, and families created later are matched only once.
+ *
+ * @author Enrico van Oosten
+ */
+public final class EntityQuery {
+	private final EntityWorld world;
+
+	/** Components an entity needs all of, at least one of, and none of */
+	final RECSBits allBits = new RECSBits();
+	final RECSBits anyBits = new RECSBits();
+	final RECSBits noneBits = new RECSBits();
+	/**
+	 * The first word of the filters, used to match families with only component ids below 64.
+	 * Such a family cannot have the all components with higher ids, so it never matches if
+	 * there are any.
+	 */
+	private long allWord, anyWord, noneWord;
+	private boolean allFitsWord = true;
+	private boolean hasAny = false;
+
+	/**
+	 * The families matching this query, and the number of families of the world that were
+	 * checked to fill it.
+	 */
+	private final Array<EntityFamily> families = new Array<EntityFamily>(false, 4, EntityFamily.class);
+	private int checkedFamilyCount = 0;
+
+	EntityQuery(EntityWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Only match entities which have all the given components.
+	 */
+	public EntityQuery all(Class<? extends Component>... components) {
+		return set(allBits, components);
+	}
+
+	/**
+	 * Only match entities which have at least one of the given components.
+	 */
+	public EntityQuery any(Class<? extends Component>... components) {
+		return set(anyBits, components);
+	}
+
+	/**
+	 * Only match entities which have none of the given components.
+	 */
+	public EntityQuery none(Class<? extends Component>... components) {
+		return set(noneBits, components);
+	}
+
+	private EntityQuery set(RECSBits bits, Class<? extends Component>[] components) {
+		for (Class<? extends Component> component : components)
+			bits.set(world.getComponentId(component));
+		allWord = allBits.getWord(0);
+		anyWord = anyBits.getWord(0);
+		noneWord = noneBits.getWord(0);
+		allFitsWord = allBits.wordCount() <= 1;
+		hasAny = !anyBits.isEmpty();
+		families.clear();
+		checkedFamilyCount = 0;
+		return this;
+	}
+
+	/**
+	 * Returns if the entity is added to the world of this query and matches it.
+	 */
+	public boolean matches(Entity e) {
+		return e.family != null && e.family.world == world && matches(e.family);
+	}
+
+	/**
+	 * Returns if the entities of the family match this query.
+	 */
+	boolean matches(EntityFamily family) {
+		if (family.singleWord) {
+			long word = family.componentWord;
+			return allFitsWord
+					&& (allWord & word) == allWord
+					&& (!hasAny || (anyWord & word) != 0)
+					&& (noneWord & word) == 0;
+		}
+		return matches(family.componentBits);
+	}
+
+	/**
+	 * Returns if an entity with the given components matches this query.
+	 */
+	boolean matches(RECSBits componentBits) {
+		return allBits.contains(componentBits)
+				&& (anyBits.isEmpty() || anyBits.intersects(componentBits))
+				&& !noneBits.intersects(componentBits);
+	}
+
+	/**
+	 * Get the families of all the entities matching this query, their entities can be iterated
+	 * chunk by chunk like in {@link EntitySystem#getFamilies()}.
+	 */
+	public Array<EntityFamily> getFamilies() {
+		int familyCount = world.getFamilyCount();
+		if (familyCount < checkedFamilyCount) {
+			//The world was reset.
+			families.clear();
+			checkedFamilyCount = 0;
+		}
+		if (familyCount != checkedFamilyCount) {
+			world.getFamilies(this, checkedFamilyCount, families);
+			checkedFamilyCount = familyCount;
+		}
+		return families;
+	}
+
+	/**
+	 * The number of entities matching this query.
+	 */
+	public int size() {
+		Array<EntityFamily> families = getFamilies();
+		int size = 0;
+		for (int i = 0; i < families.size; i++)
+			size += families.items[i].size();
+		return size;
+	}
+
+	/**
+	 * Add the ids of all the entities matching this query to the given array.
+	 */
+	public IntArray getIds(IntArray out) {
+		Array<EntityFamily> families = getFamilies();
+		for (int i = 0; i < families.size; i++) {
+			EntityFamily family = families.items[i];
+			for (int j = 0; j < family.getChunkCount(); j++) {
+				EntityChunk chunk = family.getChunk(j);
+				out.addAll(chunk.ids, 0, chunk.size);
+			}
+		}
+		return out;
+	}
+}
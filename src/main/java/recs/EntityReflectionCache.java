@@ -18,6 +18,8 @@ import com.badlogic.gdx.utils.IntMap;
 public final class EntityReflectionCache {
 	final EntityFamily family;
 	final IntMap<Field> componentFields;
+	/** Set to false when the world is reset, the component ids are no longer valid after that */
+	boolean valid = true;
 
 	EntityReflectionCache(IntMap<Field> componentFields, EntityFamily family) {
 		this.componentFields = componentFields;
@@ -1,9 +1,9 @@
 package recs;
 
+import recs.utils.DenseIntSet;
 import recs.utils.RECSBits;
 
-import com.badlogic.gdx.utils.IntSet;
-import com.badlogic.gdx.utils.IntSet.IntSetIterator;
+import com.badlogic.gdx.utils.Array;
 
 /**
  * Extend this class and add it to the EntityWorld to create a new EntitySystem.
@@ -26,7 +26,7 @@ public abstract class EntitySystem {
 	/**
 	 * A set of the entityIds of the entities that are being processed by this system.
 	 */
-	IntSet entityIds;
+	DenseIntSet entityIds;
 	/**
 	 * A bitset of the components required for an entity to be processed by this system.
 	 */
@@ -35,12 +35,37 @@ public abstract class EntitySystem {
 	 * An array of the classes of the components this system requires.
 	 */
 	Class<? extends Component>[] components;
+	/**
+	 * The classes of the components of which an entity needs at least one, and the classes of
+	 * the components that exclude an entity from this system.
+	 */
+	private Class<? extends Component>[] anyComponents;
+	private Class<? extends Component>[] excludedComponents;
+	/**
+	 * The query matching the entities of this system, created when the system is added to a world.
+	 */
+	EntityQuery query;
+
+	/**
+	 * The components this system reads and writes through its ComponentMapper fields, filled
+	 * when the system is added to a world, only fields annotated with {@link Read} count as reads.
+	 * A system without ComponentMappers is assumed to use all components when systems are
+	 * processed in parallel.
+	 */
+	final RECSBits readComponents = new RECSBits();
+	final RECSBits writeComponents = new RECSBits();
+	boolean usesAllComponents = true;
+	/** The views set to the ComponentMapper fields annotated with {@link Read} */
+	final Array<ReadOnlyComponentMapper<?>> readOnlyMappers = new Array<ReadOnlyComponentMapper<?>>(false, 2);
+	/**
+	 * Systems which have to be processed before this system.
+	 */
+	final Array<EntitySystem> runAfter = new Array<EntitySystem>(false, 2, EntitySystem.class);
 
 	/**
 	 * Indicates if this system will be processed by the world or not.
 	 */
 	private boolean enabled = true;
-	private IntSetIterator iterator;
 
 	/**
 	 * Create an entitysystem that processes entities with the specified
@@ -48,8 +73,50 @@ public abstract class EntitySystem {
 	 */
 	public EntitySystem(Class<? extends Component>... components) {
 		this.components = components;
-		entityIds = new IntSet(16);
-		iterator = new IntSetIterator(entityIds);
+		entityIds = new DenseIntSet(16);
+	}
+
+	/**
+	 * Only process entities which also have at least one of the given components, call from
+	 * the constructor.
+	 */
+	protected final void requireAny(Class<? extends Component>... components) {
+		if (world != null)
+			throw new IllegalStateException("Filters have to be set before the system is added to a world");
+		anyComponents = components;
+	}
+
+	/**
+	 * Do not process entities which have any of the given components, call from the constructor.
+	 */
+	protected final void exclude(Class<? extends Component>... components) {
+		if (world != null)
+			throw new IllegalStateException("Filters have to be set before the system is added to a world");
+		excludedComponents = components;
+	}
+
+	/**
+	 * Process this system after the given systems, whatever the order the systems were added in.
+	 * Also holds when the world processes systems in parallel and the systems do not conflict.
+	 */
+	public void runAfter(EntitySystem... systems) {
+		for (EntitySystem system : systems)
+			runAfter.add(system);
+		if (world != null)
+			world.systemOrderChanged();
+	}
+
+	/**
+	 * Create the query of this system for the world it is added to.
+	 */
+	@SuppressWarnings("unchecked")
+	EntityQuery createQuery(EntityWorld world) {
+		EntityQuery query = world.query().all(components);
+		if (anyComponents != null)
+			query.any(anyComponents);
+		if (excludedComponents != null)
+			query.none(excludedComponents);
+		return query;
 	}
 
 	/**
@@ -68,10 +135,15 @@ public abstract class EntitySystem {
 	 *            The time that has passed in seconds since last update.
 	 */
 	protected void processSystem(float deltaInSec) {
-		iterator.reset();
-
-		while (iterator.hasNext)
-			processEntity(iterator.next(), deltaInSec);
+		DenseIntSet entityIds = this.entityIds;
+		entityIds.sort();
+		for (int i = 0; i < entityIds.size; i++) {
+			int id = entityIds.items[i];
+			processEntity(id, deltaInSec);
+			//Removing the entity moved the last entity into its place, process that one next.
+			if (i < entityIds.size && entityIds.items[i] != id)
+				i--;
+		}
 	}
 
 	/**
@@ -85,11 +157,44 @@ public abstract class EntitySystem {
 
 	/**
 	 * Return a set of all the ids of all the entities that are being processed by this system.
+	 * The ids are packed in the first size items of the set.
 	 */
-	public IntSet getAllEntities() {
+	public DenseIntSet getAllEntities() {
 		return entityIds;
 	}
 
+	/**
+	 * Keep the ids of the entities of this system in ascending order, so components stored by
+	 * entity id are processed front to back. The ids are sorted before the system is processed
+	 * when entities were added or removed since.
+	 */
+	public void setSortEntities(boolean sort) {
+		entityIds.setSorted(sort);
+	}
+
+	/**
+	 * Return the families of all the entities that are being processed by this system, so their
+	 * entities and components can be iterated chunk by chunk:
+	 *
+	 * <pre>
+	 * Array&lt;EntityFamily&gt; families = getFamilies();
+	 * for (int i = 0; i &lt; families.size; i++) {
+	 *     EntityFamily family = families.get(i);
+	 *     for (int j = 0; j &lt; family.getChunkCount(); j++) {
+	 *         EntityChunk chunk = family.getChunk(j);
+	 *         Component[] positions = chunk.getColumn(positionMapper);
+	 *         for (int k = 0; k &lt; chunk.size(); k++)
+	 *             //operate on (Position) positions[k]
+	 *     }
+	 * }
+	 * </pre>
+	 *
+	 * Do not add or remove entities or components while iterating the chunks.
+	 */
+	protected Array<EntityFamily> getFamilies() {
+		return query.getFamilies();
+	}
+
 	/**
 	 * Set if this system should be processed by the world.
 	 *
@@ -132,7 +237,25 @@ public abstract class EntitySystem {
 	}
 
 	/**
-	 * Remove an entity from the system.
+	 * Add multiple entities to this system, making room for all of them at once.
+	 */
+	void addEntities(int[] ids, int count) {
+		entityIds.ensureCapacity(count);
+		for (int i = 0; i < count; i++)
+			addEntity(ids[i]);
+	}
+
+	/**
+	 * Remove multiple entities from this system.
+	 */
+	void removeEntities(int[] ids, int count) {
+		for (int i = 0; i < count; i++)
+			removeEntity(ids[i]);
+	}
+
+	/**
+	 * Remove an entity from the system, also called for every entity of the system when the
+	 * system is removed from the world.
 	 */
 	protected void removeEntity(int id) {
 		entityIds.remove(id);
@@ -146,9 +269,20 @@ public abstract class EntitySystem {
 	}
 
 	/**
-	 * Remove all the entities from this system.
+	 * Returns if the entities of the family are processed by this system.
+	 */
+	boolean matches(EntityFamily family) {
+		return query.matches(family);
+	}
+
+	/**
+	 * Remove all the entities from this system, calling removeEntity for each.
 	 */
 	void clear() {
+		//From the back, so removing an id does not move the ids still to be removed.
+		for (int i = entityIds.size - 1; i >= 0; i--)
+			removeEntity(entityIds.items[i]);
 		entityIds.clear();
+		query = null;
 	}
 }
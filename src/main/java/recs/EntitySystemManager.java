@@ -7,6 +7,7 @@ import java.util.LinkedList;
 
 import recs.utils.RECSBits;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntMap;
 
 
@@ -23,6 +24,28 @@ public final class EntitySystemManager {
 	private IntMap<EntitySystem> systemMap = new IntMap<EntitySystem>();
 	private EntityWorld world;
 	private RECSBits freeSystemBits = new RECSBits();
+	/** If systems that do not conflict are processed at the same time */
+	private boolean parallel = false;
+	/** The systems in the order they are processed, recreated when the systems change */
+	private EntitySystem[] orderedSystems = null;
+	/** The schedule used to process systems in parallel, recreated when the systems change */
+	private SystemScheduler scheduler = null;
+	/** If systems are checked for writes through their read-only ComponentMappers */
+	private boolean checkReadOnlyMappers = false;
+
+	/**
+	 * Inverted index used to find the systems of a family: the bits of all systems, and for every
+	 * component id the systems which require it, accept it as one of their any components, or
+	 * exclude it.
+	 */
+	private final RECSBits allSystems = new RECSBits();
+	private final RECSBits anySystems = new RECSBits();
+	private final RECSBits requiredComponents = new RECSBits();
+	private final Array<RECSBits> requiredBy = new Array<RECSBits>(true, 16, RECSBits.class);
+	private final Array<RECSBits> anyBy = new Array<RECSBits>(true, 16, RECSBits.class);
+	/** Reused to collect the systems with any components matched by a family */
+	private final RECSBits anyMatched = new RECSBits();
+	private final Array<RECSBits> excludedBy = new Array<RECSBits>(true, 16, RECSBits.class);
 
 	EntitySystemManager(EntityWorld world) {
 		this.world = world;
@@ -47,6 +70,24 @@ public final class EntitySystemManager {
 		}
 	}
 
+	/**
+	 * Add the entities with the given ids to all the systems in the given systembits;
+	 */
+	void addEntitiesToSystems(int[] entityIds, int count, RECSBits systemBits) {
+		for (int i = systemBits.nextSetBit(0); i >= 0; i = systemBits.nextSetBit(i + 1)) {
+			systemMap.get(i).addEntities(entityIds, count);
+		}
+	}
+
+	/**
+	 * Remove the entities with the given ids from all the systems in the given systembits;
+	 */
+	void removeEntitiesFromSystems(int[] entityIds, int count, RECSBits systemBits) {
+		for (int i = systemBits.nextSetBit(0); i >= 0; i = systemBits.nextSetBit(i + 1)) {
+			systemMap.get(i).removeEntities(entityIds, count);
+		}
+	}
+
 	/**
 	 * Remove the entity from all the systems in the given systembits;
 	 */
@@ -63,13 +104,87 @@ public final class EntitySystemManager {
 		if (systems.contains(system))
 			throw new RuntimeException("System already added");
 		system.id = getNewSystemId();
-		system.componentBits = world.getComponentBits(system.components);
+		system.query = system.createQuery(world);
+		system.componentBits = system.query.allBits;
 		system.world = world;
 
 		initializeFields(system);
 
 		systems.add(system);
 		systemMap.put(system.id, system);
+		index(system, true);
+		scheduleChanged();
+	}
+
+	void setParallelProcessing(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	void setCheckReadOnlyMappers(boolean check) {
+		checkReadOnlyMappers = check;
+		for (EntitySystem system : systems) {
+			for (int i = 0; i < system.readOnlyMappers.size; i++)
+				system.readOnlyMappers.get(i).checkWrites = check;
+		}
+	}
+
+	/**
+	 * Process a system after the task systems it runs after are done, then throw if it changed
+	 * components through a read-only ComponentMapper.
+	 */
+	void processSystem(EntitySystem system, float deltaInSec) {
+		//Wait for the task systems this system runs after, they process asynchronously.
+		for (int i = 0; i < system.runAfter.size; i++) {
+			EntitySystem before = system.runAfter.items[i];
+			if (before instanceof EntityTaskSystem && before.world == world)
+				((EntityTaskSystem) before).awaitRuns();
+		}
+		system.process(deltaInSec);
+		if (checkReadOnlyMappers) {
+			for (int i = 0; i < system.readOnlyMappers.size; i++)
+				system.readOnlyMappers.get(i).checkWrites(system);
+		}
+	}
+
+	/** Is called when the systems or the order of the systems changed */
+	void scheduleChanged() {
+		orderedSystems = null;
+		scheduler = null;
+	}
+
+	/**
+	 * Add or remove the bit of the system in the inverted index.
+	 */
+	private void index(EntitySystem system, boolean add) {
+		EntityQuery query = system.query;
+		setIndex(allSystems, system.id, add);
+		setIndex(anySystems, system.id, add && !query.anyBits.isEmpty());
+		index(requiredBy, query.allBits, system.id, add);
+		index(anyBy, query.anyBits, system.id, add);
+		index(excludedBy, query.noneBits, system.id, add);
+
+		requiredComponents.clear();
+		for (int i = 0; i < requiredBy.size; i++) {
+			if (requiredBy.items[i] != null && !requiredBy.items[i].isEmpty())
+				requiredComponents.set(i);
+		}
+	}
+
+	private static void index(Array<RECSBits> index, RECSBits componentBits, int systemId, boolean add) {
+		for (int i = componentBits.nextSetBit(0); i >= 0; i = componentBits.nextSetBit(i + 1)) {
+			if (i >= index.size)
+				index.setSize(i + 1);
+			if (index.items[i] == null)
+				index.items[i] = new RECSBits();
+			setIndex(index.items[i], systemId, add);
+		}
+	}
+
+	private static void setIndex(RECSBits bits, int systemId, boolean set) {
+		if (set)
+			bits.set(systemId);
+		else
+			bits.clear(systemId);
 	}
 
 	boolean hasSystem(EntitySystem system) {
@@ -81,17 +196,39 @@ public final class EntitySystemManager {
 	 */
 	@SuppressWarnings("unchecked")
 	private void initializeFields(EntitySystem system) {
+		system.readComponents.clear();
+		system.writeComponents.clear();
+		system.readOnlyMappers.clear();
 		try {
 			Class<? extends EntitySystem> class1 = system.getClass();
 			do {
 				for (Field field : class1.getDeclaredFields()) {
-					// Check for ComponentMapper declarations.
-					if (field.getType() == ComponentMapper.class) {
+					// Check for ComponentMapper declarations, including the specific mapper types.
+					if (ComponentMapper.class.isAssignableFrom(field.getType())) {
 						field.setAccessible(true);
 						// Read the type in the <> of the ComponentMapper
 						Type type = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+						ComponentMapper<?> mapper = world.getComponentMapper((Class<? extends Component>) type);
+						boolean read = field.isAnnotationPresent(Read.class);
+						if (read && field.isAnnotationPresent(Write.class))
+							throw new RuntimeException("Field " + field.getName() + " of " + class1.getName() + " is annotated with both @Read and @Write");
+						if (read) {
+							if (field.getType() != ComponentMapper.class)
+								throw new RuntimeException("Field " + field.getName() + " of " + class1.getName()
+										+ " is annotated with @Read and has to be declared as a ComponentMapper");
+							ReadOnlyComponentMapper<?> view = readOnly(mapper, system instanceof ParallelEntitySystem);
+							view.checkWrites = checkReadOnlyMappers;
+							system.readOnlyMappers.add(view);
+							system.readComponents.set(mapper.componentId);
+							mapper = view;
+						} else {
+							system.writeComponents.set(mapper.componentId);
+						}
+						if (!field.getType().isInstance(mapper))
+							throw new RuntimeException("Field " + field.getName() + " of " + class1.getName() + " is a "
+									+ field.getType().getSimpleName() + " but " + type + " is stored in a " + mapper.getClass().getSimpleName());
 						// Set the field with the right ComponentMapper.
-						field.set(system, world.getComponentMapper((Class<? extends Component>) type));
+						field.set(system, mapper);
 					}
 					// Check for EventListener declarations.
 					if (field.getType() == EventListener.class) {
@@ -111,15 +248,32 @@ public final class EntitySystemManager {
 		} catch (IllegalAccessException e) {
 			e.printStackTrace();
 		}
+		system.usesAllComponents = system.readComponents.isEmpty() && system.writeComponents.isEmpty();
+	}
+
+	/** Create a read-only view of the mapper, capturing the type of its components */
+	private static <T extends Component> ReadOnlyComponentMapper<T> readOnly(ComponentMapper<T> mapper, boolean perThread) {
+		return new ReadOnlyComponentMapper<T>(mapper, perThread);
 	}
 
 	/**
 	 * Process all the systems with the given delta.
 	 */
 	void process(float deltaInSec) {
-		for (EntitySystem system : systems) {
-			if (system.isEnabled()) {
-				system.process(deltaInSec);
+		if (orderedSystems == null)
+			orderedSystems = SystemScheduler.order(systems);
+		if (parallel) {
+			if (scheduler == null)
+				scheduler = new SystemScheduler(orderedSystems);
+			scheduler.process(this, deltaInSec, world.getWorkers());
+			return;
+		}
+		EntitySystem[] orderedSystems = this.orderedSystems;
+		for (EntitySystem system : orderedSystems) {
+			//Skip the systems removed by the systems processed before them.
+			if (system.isEnabled() && systemMap.get(system.id) == system) {
+				processSystem(system, deltaInSec);
+				world.playbackCommands();
 			}
 		}
 	}
@@ -128,26 +282,32 @@ public final class EntitySystemManager {
 	 * Get the system bits matching the given componentbits.
 	 */
 	RECSBits getSystemBits(RECSBits componentBits) {
-		RECSBits systemBits = new RECSBits();
-		for (EntitySystem s : systems) {
-			if (s.getComponentBits().contains(componentBits)) {
-				systemBits.set(s.id);
-			}
+		RECSBits systemBits = new RECSBits(allSystems);
+		//Drop the systems requiring a component the family does not have.
+		for (int i = requiredComponents.nextSetBit(0); i >= 0; i = requiredComponents.nextSetBit(i + 1)) {
+			if (!componentBits.get(i))
+				systemBits.remove(requiredBy.items[i]);
 		}
+		//Drop the systems excluding one of the components, and the systems with any components
+		//of which the family has none.
+		RECSBits anyMatched = this.anyMatched;
+		anyMatched.clear();
+		for (int i = componentBits.nextSetBit(0); i >= 0; i = componentBits.nextSetBit(i + 1)) {
+			if (i < excludedBy.size && excludedBy.items[i] != null)
+				systemBits.remove(excludedBy.items[i]);
+			if (i < anyBy.size && anyBy.items[i] != null)
+				anyMatched.add(anyBy.items[i]);
+		}
+		anySystems.andNotInto(anyMatched, anyMatched);
+		systemBits.remove(anyMatched);
 		return systemBits;
 	}
 
 	/** Retrieve an unused system id, reusing id's of removed systems */
 	int getNewSystemId() {
-		int i = 0;
-		for (; i < freeSystemBits.numBits(); i++) {
-			if (!freeSystemBits.get(i)) {
-				freeSystemBits.set(i);
-				return i;
-			}
-		}
-		freeSystemBits.set(i + 1);
-		return i + 1;
+		int i = freeSystemBits.nextClearBit(0);
+		freeSystemBits.set(i);
+		return i;
 	}
 
 	/** Wipe all the data */
@@ -155,13 +315,22 @@ public final class EntitySystemManager {
 		systems.clear();
 		systemMap.clear();
 		freeSystemBits.clear();
+		allSystems.clear();
+		anySystems.clear();
+		requiredComponents.clear();
+		requiredBy.clear();
+		anyBy.clear();
+		excludedBy.clear();
+		scheduleChanged();
 	}
 
 	/** Remove a system, clearing all its data */
 	public void removeSystem(EntitySystem system) {
+		index(system, false);
 		freeSystemBits.clear(system.id);
 		systems.remove(system);
 		systemMap.remove(system.id);
 		system.clear();
+		scheduleChanged();
 	}
 }
@@ -4,6 +4,9 @@ package recs;
  * A threaded EntitySystem, only use when there is no possible way concurrency
  * problems can occur.
  *
+ * The runs are tracked by the {@link Frame} returned from world.process, and systems declared
+ * to run after a task system wait until its runs are finished.
+ *
  * @author Enrico van Oosten
  */
 public abstract class EntityTaskSystem extends EntitySystem implements Runnable {
@@ -11,6 +14,8 @@ public abstract class EntityTaskSystem extends EntitySystem implements Runnable
 	private boolean useInterval = false;
 	private float timePassed = 0;
 	private float intervalInSec = 0;
+	/** The number of runs posted which are not finished yet */
+	private int pendingRuns = 0;
 
 	/**
 	 * Create a task system that runs the processSystem/Entity async every time
@@ -36,39 +41,79 @@ public abstract class EntityTaskSystem extends EntitySystem implements Runnable
 			timePassed += deltaInSec;
 			while (timePassed > intervalInSec) {
 				timePassed -= intervalInSec;
-				EntityWorld.postRunnable(this);
+				post(intervalInSec);
 			}
 		} else {
 			delta = deltaInSec;
-			EntityWorld.postRunnable(this);
+			post(deltaInSec);
 		}
 	}
 
-	@Override
-	public void run() {
-		if(useInterval) {
-			processSystem(intervalInSec);
-		} else {
-			processSystem(delta);
+	private void post(float deltaInSec) {
+		final Frame frame = world.getCurrentFrame();
+		final float runDelta = deltaInSec;
+		synchronized (this) {
+			pendingRuns++;
+		}
+		frame.taskPosted();
+		final EntityWorld taskWorld = world;
+		Runnable run = new Runnable() {
+			public void run() {
+				Throwable failure = null;
+				try {
+					processSystem(runDelta);
+				} catch (RuntimeException e) {
+					failure = e;
+					throw e;
+				} catch (Error e) {
+					failure = e;
+					throw e;
+				} finally {
+					taskWorld.taskFinished();
+					runFinished(frame, failure);
+				}
+			}
+		};
+		try {
+			taskWorld.executeTask(run);
+		} catch (RuntimeException e) {
+			runFinished(frame, e);
+			throw e;
 		}
 	}
 
+	private void runFinished(Frame frame, Throwable failure) {
+		synchronized (this) {
+			if (--pendingRuns == 0)
+				notifyAll();
+		}
+		frame.taskFinished(failure);
+	}
 
-	/*
-	private static final float NANO_TO_SEC = 1 / 1000000000f;
-	private float lastTime = 0;
+	/**
+	 * Wait until the runs of this system posted so far are finished.
+	 */
+	synchronized void awaitRuns() {
+		while (pendingRuns > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for " + getClass().getName(), e);
+			}
+		}
+	}
 
+	/**
+	 * Process the system on the calling thread, with the interval or the delta of the last
+	 * process of the world. Runs posted by the world do not go through this method.
+	 */
 	@Override
 	public void run() {
 		if(useInterval) {
 			processSystem(intervalInSec);
 		} else {
-			float currTime = System.nanoTime() * NANO_TO_SEC;
-			float deltaInSec = lastTime != 0f ? currTime - lastTime : 0;
-			processSystem(deltaInSec);
-			lastTime = System.nanoTime() * NANO_TO_SEC;
+			processSystem(delta);
 		}
 	}
-	*/
-
 }
@@ -1,17 +1,20 @@
 package recs;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import recs.utils.BlockingThreadPoolExecutor;
 import recs.utils.RECSBits;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.IntMap.Keys;
-import com.badlogic.gdx.utils.IntSet.IntSetIterator;
 import com.badlogic.gdx.utils.ObjectMap;
 
 
@@ -23,15 +26,26 @@ import com.badlogic.gdx.utils.ObjectMap;
  */
 public final class EntityWorld {
 	/**
-	 * Global thread pool used by TaskSystems
+	 * Thread pool used by the TaskSystems of worlds without their own task executor.
 	 */
-	private static BlockingThreadPoolExecutor threads = new BlockingThreadPoolExecutor(2, 10);
+	private static final BlockingThreadPoolExecutor threads = new BlockingThreadPoolExecutor(2, 10);
 	/**
-	 * Maps used to temporarily store added/removed components from entities
-	 * that are not yet added to the EntityWorld.
+	 * The number of threads used to process systems and entities in parallel by default.
 	 */
-	private static ObjectMap<Entity, List<Component>> scheduledAdds = new ObjectMap<Entity, List<Component>>();
-	private static ObjectMap<Entity, List<Component>> scheduledRemoves = new ObjectMap<Entity, List<Component>>();
+	static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Thread pool used by ParallelEntitySystems and the parallel scheduling of systems of worlds
+	 * without their own worker executor.
+	 */
+	private static final ExecutorService defaultWorkers = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "recs-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	/**
 	 * Contains all the entities so they can be retrieved with getEntity
@@ -47,24 +61,58 @@ public final class EntityWorld {
 	private final EventManager eventManager;
 
 	/**
-	 * Values used to give entities an unique id.
+	 * Gives entities an unique id.
+	 */
+	private final EntityIdAllocator entityIds;
+
+	/**
+	 * Structural changes recorded during processing, played back between systems.
+	 */
+	private final CommandBuffer commandBuffer;
+
+	/**
+	 * Reused to hold the systems an entity moves in or out of when its components change.
+	 */
+	private final RECSBits changedSystemBits = new RECSBits();
+
+	/**
+	 * The executors running the task systems and the parallel work of this world, and the number
+	 * of threads parallel work is split over.
+	 */
+	private Executor taskExecutor = threads;
+	private Executor workers = defaultWorkers;
+	private int parallelism = PARALLELISM;
+	/**
+	 * The number of task system runs posted by this world which are not finished yet.
+	 */
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+
+	/**
+	 * Tracks the runs of the task systems started by the current process.
 	 */
-	private final RECSBits entityIds;
-	private int lastUsedId = 0;
-	private int numFreedIds = 0;
+	private Frame currentFrame = new Frame();
 
 	/**
 	 * Add Entities with components and systems to this class and call the
 	 * process method.
 	 */
 	public EntityWorld() {
+		this(ComponentStorage.HASHED);
+	}
+
+	/**
+	 * Create a world where the ComponentMappers use the given storage,
+	 * unless another storage was set for a component class with setComponentStorage.
+	 */
+	public EntityWorld(ComponentStorage defaultStorage) {
 		systemManager = new EntitySystemManager(this);
-		componentManager = new ComponentManager(this);
+		componentManager = new ComponentManager(this, defaultStorage);
 		entitydataManager = new EntityDataManager(this);
 		eventManager = new EventManager();
 
 		addedEntities = new IntMap<Entity>();
-		entityIds = new RECSBits();
+		entityIds = new EntityIdAllocator();
+		commandBuffer = new CommandBuffer(this);
 	}
 
 	/**
@@ -73,9 +121,45 @@ public final class EntityWorld {
 	 * @param deltaInSec
 	 *            The time passed in seconds since the last update.
 	 *            EntityTaskSystems are updated independantly of this delta.
+	 * @return
+	 * 		the frame which is done when the EntityTaskSystems started by this process are
+	 * 		finished.
 	 */
-	public void process(float deltaInSec) {
+	public Frame process(float deltaInSec) {
+		Frame frame = new Frame();
+		currentFrame = frame;
 		systemManager.process(deltaInSec);
+		commandBuffer.playback();
+		return frame;
+	}
+
+	/**
+	 * Get the frame of the current or last process.
+	 */
+	Frame getCurrentFrame() {
+		return currentFrame;
+	}
+
+	/**
+	 * Create a query matching entities by their components, see {@link EntityQuery}.
+	 */
+	public EntityQuery query() {
+		return new EntityQuery(this);
+	}
+
+	/**
+	 * Get the buffer used to add and remove entities and components while systems are being
+	 * processed, the commands are played back after every system and at the end of process.
+	 */
+	public CommandBuffer getCommandBuffer() {
+		return commandBuffer;
+	}
+
+	/**
+	 * Play back the commands recorded in the command buffer, called after every system.
+	 */
+	void playbackCommands() {
+		commandBuffer.playback();
 	}
 
 	/**
@@ -85,14 +169,119 @@ public final class EntityWorld {
 	 * 		returns the id assigned to the entity.
 	 */
 	public int addEntity(Entity entity) {
+		int id = addEntityData(entity, entitydataManager.getReflection(entity));
+
+		//Add the entity to the systems.
+		systemManager.addEntityToSystems(entity, entity.family.systemBits);
+
+		return id;
+	}
+
+	/**
+	 * Add multiple entities to the world. The reflection data is read once for every run of
+	 * entities of the same class, and the entities are added to the systems family by family.
+	 *
+	 * @return
+	 * 		returns the ids assigned to the entities, in the same order.
+	 */
+	public int[] addEntities(Entity... entities) {
+		int count = entities.length;
+		int[] ids = new int[count];
+		int maxId = entityIds.ensureCapacity(count);
+		addedEntities.ensureCapacity(count);
+
+		Class<? extends Entity> lastClass = null;
+		EntityReflectionCache reflection = null;
+		for (int i = 0; i < count; i++) {
+			Entity entity = entities[i];
+			if (entity.getClass() != lastClass) {
+				lastClass = entity.getClass();
+				reflection = entitydataManager.getReflection(entity);
+				//Make room in the mappers of the components declared by the class.
+				int[] componentIds = reflection.family.componentIds;
+				for (int j = 0; j < componentIds.length; j++)
+					componentManager.getComponentMapper(componentIds[j]).ensureCapacity(maxId, count);
+			}
+			entity.reflection = reflection;
+			ids[i] = addEntityData(entity, reflection);
+		}
+
+		//Group the entities by family so the systems of every family are resolved once.
+		ObjectMap<EntityFamily, IntArray> familyIds = new ObjectMap<EntityFamily, IntArray>();
+		for (int i = 0; i < count; i++) {
+			IntArray idsOfFamily = familyIds.get(entities[i].family);
+			if (idsOfFamily == null) {
+				idsOfFamily = new IntArray();
+				familyIds.put(entities[i].family, idsOfFamily);
+			}
+			idsOfFamily.add(ids[i]);
+		}
+		for (ObjectMap.Entry<EntityFamily, IntArray> entry : familyIds.entries())
+			systemManager.addEntitiesToSystems(entry.value.items, entry.value.size, entry.key.systemBits);
+
+		return ids;
+	}
+
+	/**
+	 * Get an archetype that can be used to create or remove entities with exactly the given
+	 * components in bulk.
+	 */
+	public EntityArchetype getArchetype(Class<? extends Component>... components) {
+		return new EntityArchetype(this, components.clone());
+	}
+
+	/**
+	 * Create entities which have exactly the components of the archetype. The components are
+	 * taken from their ComponentPool, or created with their constructor without arguments.
+	 * The family, mappers and systems of the entities are resolved and resized once for all
+	 * the entities.
+	 *
+	 * @return
+	 * 		returns the ids of the created entities.
+	 */
+	public int[] createEntities(EntityArchetype archetype, int count) {
+		if (archetype.world != this)
+			throw new IllegalArgumentException("Archetype belongs to another world");
+		int[] ids = new int[count];
+		EntityFamily family = getEntityFamily(getComponentBits(archetype.componentClasses));
+		EntityReflectionCache reflection = entitydataManager.getReflection(Entity.class);
+
+		//Resolve the mappers once and make room for the new components.
+		int maxId = entityIds.ensureCapacity(count);
+		addedEntities.ensureCapacity(count);
+		ComponentMapper<?>[] mappers = new ComponentMapper<?>[archetype.componentClasses.length];
+		for (int i = 0; i < mappers.length; i++) {
+			mappers[i] = componentManager.getComponentMapper(archetype.componentClasses[i]);
+			mappers[i].ensureCapacity(maxId, count);
+		}
+
+		for (int i = 0; i < count; i++) {
+			Entity entity = new Entity();
+			int id = getNewEntityId();
+			entity.id = id;
+			entity.reflection = reflection;
+			entity.family = family;
+			addedEntities.put(id, entity);
+			for (int j = 0; j < mappers.length; j++)
+				mappers[j].add(id, archetype.newComponent(j));
+			family.addEntity(entity);
+			ids[i] = id;
+		}
+
+		systemManager.addEntitiesToSystems(ids, count, family.systemBits);
+		return ids;
+	}
+
+	/**
+	 * Add the entity and its components to the world and its family, without adding it to the systems.
+	 */
+	private int addEntityData(Entity entity, EntityReflectionCache reflection) {
 		int id = getNewEntityId();
 		entity.id = id;
 		addedEntities.put(id, entity);
 
-		Class<? extends Entity> entityClass = entity.getClass();
-		// Read reflection data and use it to add all the components that were
+		// Use the reflection data to add all the components that were
 		// declared as fields.
-		EntityReflectionCache reflection = entitydataManager.getReflection(entityClass);
 		entity.family = reflection.family;
 
 		if (entity.getClass() != Entity.class) {
@@ -111,37 +300,118 @@ public final class EntityWorld {
 			}
 		}
 		// Add all the components that were added to the entity before the
-		// entity was added to the world.
-		List<Component> scheduleAddList = scheduledAdds.remove(entity);
-		if (scheduleAddList != null) {
-			componentManager.addComponent(entity, scheduleAddList.toArray(new Component[0]));
-		}
-		// Remove all the components that were removed from the entity before
-		// the entity was added to the world.
-		List<Component> scheduledRemovesList = scheduledRemoves.remove(entity);
-		if (scheduledRemovesList != null) {
-			componentManager.removeComponent(entity, scheduledRemovesList.toArray(new Component[0]));
-		}
+		// entity was added to the world, then remove the ones that were removed.
+		if (entity.stagedAddCount != 0)
+			componentManager.addComponents(entity, entity.stagedAdds, entity.stagedAddCount);
+		if (entity.stagedRemoveCount != 0)
+			componentManager.removeComponents(entity, entity.stagedRemoves, entity.stagedRemoveCount);
+		entity.clearStagedComponents();
 
-		//Add the entity to the systems.
-		systemManager.addEntityToSystems(entity, entity.family.systemBits);
+		//Add the entity to its family.
+		entity.family.addEntity(entity);
 
 		return id;
 	}
 
+	/**
+	 * Remove an entity and all its components from the world. The entity is put back into the
+	 * EntityPool registered for its class, if there is one.
+	 *
+	 * @return
+	 * 		returns the removed entity.
+	 */
 	public Entity removeEntity(int entityId) {
-		numFreedIds++;
 		Entity e = getEntity(entityId);
 		if (e == null)
 			throw new RuntimeException("Entity was not added to this world: " + entityId);
-		//remove the entity from all its systems.
+		//remove the entity from all its systems and its family.
 		systemManager.removeEntityFromSystems(e, e.family.systemBits);
+		e.family.removeEntity(e);
 		//Remove all the entities components from the componentmappers.
 		componentManager.removeEntityFromMappers(e);
 
-		//Free the entities id for reuse
-		entityIds.clear(entityId);
-		return addedEntities.remove(entityId);
+		releaseEntity(e);
+		return e;
+	}
+
+	/**
+	 * Remove the first count entities of the given ids from the world. The entities are grouped
+	 * by family, so every system, mapper and family is updated once per family instead of once
+	 * per entity.
+	 */
+	public void removeEntities(int[] entityIds, int count) {
+		ObjectMap<EntityFamily, Array<Entity>> familyEntities = new ObjectMap<EntityFamily, Array<Entity>>();
+		for (int i = 0; i < count; i++) {
+			Entity e = addedEntities.remove(entityIds[i]);
+			if (e == null) {
+				//Put back the entities that were taken out before failing.
+				for (Array<Entity> entities : familyEntities.values()) {
+					for (int j = 0; j < entities.size; j++)
+						addedEntities.put(entities.items[j].id, entities.items[j]);
+				}
+				throw new RuntimeException("Entity was not added to this world: " + entityIds[i]);
+			}
+			Array<Entity> entities = familyEntities.get(e.family);
+			if (entities == null) {
+				entities = new Array<Entity>(false, 16, Entity.class);
+				familyEntities.put(e.family, entities);
+			}
+			entities.add(e);
+		}
+		for (ObjectMap.Entry<EntityFamily, Array<Entity>> entry : familyEntities.entries())
+			removeFamilyEntities(entry.key, entry.value.items, entry.value.size);
+	}
+
+	/**
+	 * Remove all the entities which have exactly the components of the archetype.
+	 *
+	 * @return
+	 * 		returns the number of removed entities.
+	 */
+	public int removeEntities(EntityArchetype archetype) {
+		if (archetype.world != this)
+			throw new IllegalArgumentException("Archetype belongs to another world");
+		EntityFamily family = getEntityFamily(getComponentBits(archetype.componentClasses));
+		int count = family.size();
+		Entity[] entities = new Entity[count];
+		for (int i = 0, idx = 0; i < family.getChunkCount(); i++) {
+			EntityChunk chunk = family.getChunk(i);
+			System.arraycopy(chunk.entities, 0, entities, idx, chunk.size);
+			idx += chunk.size;
+		}
+		for (int i = 0; i < count; i++)
+			addedEntities.remove(entities[i].id);
+		removeFamilyEntities(family, entities, count);
+		return count;
+	}
+
+	/**
+	 * Remove entities of the same family which were already taken out of addedEntities.
+	 */
+	private void removeFamilyEntities(EntityFamily family, Entity[] entities, int count) {
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++)
+			ids[i] = entities[i].id;
+		systemManager.removeEntitiesFromSystems(ids, count, family.systemBits);
+		family.removeEntities(entities, count);
+		componentManager.removeEntitiesFromMappers(family, entities, count);
+		for (int i = 0; i < count; i++)
+			releaseEntity(entities[i]);
+	}
+
+	/**
+	 * Free the id of a removed entity and put the entity back into its pool.
+	 */
+	private void releaseEntity(Entity e) {
+		entityIds.free(e.id);
+		addedEntities.remove(e.id);
+
+		@SuppressWarnings("unchecked")
+		EntityPool<Entity> pool = (EntityPool<Entity>) entitydataManager.getEntityPool(e.getClass());
+		e.family = null;
+		e.id = 0;
+		if (pool != null)
+			pool.free(e);
 	}
 
 	/**
@@ -151,6 +421,31 @@ public final class EntityWorld {
 		return addedEntities.get(entityId);
 	}
 
+	/**
+	 * Get a handle of an entity that is added to the world. Unlike the id of an entity, a handle
+	 * never refers to another entity after the entity is removed and its id is reused.
+	 */
+	public long getEntityHandle(int entityId) {
+		if (getEntity(entityId) == null)
+			throw new IllegalArgumentException("Entity was not added to this world: " + entityId);
+		return entityIds.getHandle(entityId);
+	}
+
+	/**
+	 * Returns true if the entity of the handle is still added to the world.
+	 */
+	public boolean isValid(long entityHandle) {
+		return entityIds.getId(entityHandle) != -1;
+	}
+
+	/**
+	 * Retrieve an entity using its handle, returns null if the entity was removed.
+	 */
+	public Entity getEntity(long entityHandle) {
+		int entityId = entityIds.getId(entityHandle);
+		return entityId == -1 ? null : addedEntities.get(entityId);
+	}
+
 	public IntMap<Entity> getAddedEntities() {
 		return addedEntities;
 	}
@@ -159,26 +454,10 @@ public final class EntityWorld {
 	 * Add an EntitySystem(s) to the world.
 	 */
 	public void addSystem(EntitySystem... systems) {
-		//register the systems
-		for(EntitySystem system: systems)
+		//register the systems and add the entities of every family they match.
+		for(EntitySystem system: systems) {
 			systemManager.addSystem(system);
-
-		if (addedEntities.size == 0)
-			return;
-
-		//for every entity in the world
-		for (Entity e : addedEntities.values()) {
-			//Get the updated system bits which include the bits for the new systems
-			RECSBits newSystemBits = systemManager.getSystemBits(e.family.componentBits);
-			RECSBits oldSystemBits = e.family.systemBits;
-
-			//Compare the new systembits with the old systembits and add the entity to all
-			//the systems that were added for the entity.
-			RECSBits addedSystemBits = oldSystemBits.getAddedBits(newSystemBits);
-			systemManager.addEntityToSystems(e, addedSystemBits);
-
-			//Set the old systembits to the new one.
-			e.family.systemBits.copy(newSystemBits);
+			entitydataManager.addSystem(system);
 		}
 	}
 
@@ -186,9 +465,7 @@ public final class EntityWorld {
 	 * Remove an EntitySystem from the world
 	 */
 	public void removeSystem(EntitySystem system) {
-		IntSetIterator i = system.entityIds.iterator();
-		while (i.hasNext)
-			system.removeEntity(i.next());
+		//Clear the system bit of every family, the entities of the system are dropped with it.
 		entitydataManager.removeSystem(system.id);
 		systemManager.removeSystem(system);
 	}
@@ -231,6 +508,23 @@ public final class EntityWorld {
 		return componentManager.getComponentMapper(componentClass);
 	}
 
+	/**
+	 * Set the storage used by the ComponentMapper of the given component class. Has to be
+	 * called before the component class is used by any system or entity in this world.
+	 */
+	public void setComponentStorage(Class<? extends Component> componentClass, ComponentStorage storage) {
+		componentManager.setComponentStorage(componentClass, storage);
+	}
+
+	/**
+	 * Let the chunks of every EntityFamily store the components of their entities, so systems
+	 * can iterate the components of their families chunk by chunk, see
+	 * {@link EntitySystem#getFamilies()}. Has to be called before entities are added to the world.
+	 */
+	public void setArchetypeStorage(boolean archetypeStorage) {
+		entitydataManager.setArchetypeStorage(archetypeStorage);
+	}
+
 	/**
 	 * Get a component with the componentId from the entity with entityId.
 	 */
@@ -247,6 +541,42 @@ public final class EntityWorld {
 		return componentManager.getDestructionListener(componentClass);
 	}
 
+	/**
+	 * Take a component from the ComponentPool registered for its class, creating a new component
+	 * if the pool is empty.
+	 */
+	public <T extends Component> T obtainComponent(Class<T> componentClass) {
+		ComponentPool<T> pool = componentManager.getComponentPool(componentClass);
+		if (pool == null)
+			throw new IllegalArgumentException("No ComponentPool registered for: " + componentClass.getName());
+		return pool.obtain();
+	}
+
+	/**
+	 * Take an entity from the EntityPool registered for its class, creating a new entity if the
+	 * pool is empty. The entity still has to be added to the world.
+	 */
+	public <T extends Entity> T obtainEntity(Class<T> entityClass) {
+		EntityPool<T> pool = entitydataManager.getEntityPool(entityClass);
+		if (pool == null)
+			throw new IllegalArgumentException("No EntityPool registered for: " + entityClass.getName());
+		return pool.obtain();
+	}
+
+	/**
+	 * Get the EntityPool registered for the given entity class, or null.
+	 */
+	public <T extends Entity> EntityPool<T> getEntityPool(Class<T> entityClass) {
+		return entitydataManager.getEntityPool(entityClass);
+	}
+
+	/**
+	 * Get the ComponentPool registered for the given component class, or null.
+	 */
+	public <T extends Component> ComponentPool<T> getComponentPool(Class<T> componentClass) {
+		return componentManager.getComponentPool(componentClass);
+	}
+
 	/**
 	 * Send a message to all EntitySystems that are registered to the tag of
 	 * this event.
@@ -258,10 +588,123 @@ public final class EntityWorld {
 		eventManager.sendEvent(event);
 	}
 
+	/**
+	 * Run the task on the thread pool shared by the worlds without their own task executor.
+	 */
 	public static void postRunnable(Runnable task) {
 		threads.execute(task);
 	}
 
+	/**
+	 * Set the executor running the EntityTaskSystems of this world, for example a fixed pool
+	 * sized to the cores, a ForkJoinPool or an executor starting a virtual thread per task.
+	 * Worlds share a default pool of up to 10 threads until this is set.
+	 */
+	public void setTaskExecutor(Executor executor) {
+		if (executor == null)
+			throw new IllegalArgumentException("executor can not be null");
+		taskExecutor = executor;
+	}
+
+	/**
+	 * Set the executor used by ParallelEntitySystems and the parallel processing of systems,
+	 * and the number of threads the work is split over. Worlds share a default pool with a
+	 * thread per core until this is set.
+	 *
+	 * The thread processing a system also processes entities itself and only waits for helpers
+	 * that were started, so any executor works, including one running the helpers later.
+	 */
+	public void setWorkerExecutor(Executor executor, int parallelism) {
+		if (executor == null)
+			throw new IllegalArgumentException("executor can not be null");
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism has to be at least 1: " + parallelism);
+		workers = executor;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Run a task system on the task executor of this world.
+	 */
+	void executeTask(Runnable task) {
+		pendingTasks.incrementAndGet();
+		try {
+			taskExecutor.execute(task);
+		} catch (RuntimeException e) {
+			pendingTasks.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Called when a run of a task system of this world is finished.
+	 */
+	void taskFinished() {
+		pendingTasks.decrementAndGet();
+	}
+
+	/**
+	 * Get the number of task system runs of this world which are queued or running.
+	 */
+	public int getPendingTasks() {
+		return pendingTasks.get();
+	}
+
+	/**
+	 * Get the number of threads in the task executor, or -1 if the executor is not a
+	 * ThreadPoolExecutor.
+	 */
+	public int getTaskPoolSize() {
+		return taskExecutor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) taskExecutor).getPoolSize() : -1;
+	}
+
+	/**
+	 * Get the number of tasks waiting in the queue of the task executor, including the tasks of
+	 * other worlds sharing it, or -1 if the executor is not a ThreadPoolExecutor.
+	 */
+	public int getTaskQueueSize() {
+		return taskExecutor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) taskExecutor).getQueue().size() : -1;
+	}
+
+	/**
+	 * Get the number of threads parallel work of this world is split over.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	void systemOrderChanged() {
+		systemManager.scheduleChanged();
+	}
+
+	Executor getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Process systems that do not conflict at the same time. Systems conflict if one of them
+	 * writes components the other uses, which is read from their ComponentMapper fields: fields
+	 * annotated with {@link Read} only read, all others write. A system declaring no
+	 * ComponentMappers conflicts with all systems. Conflicting systems run in the order they
+	 * were added, see {@link EntitySystem#runAfter(EntitySystem...)} for other orderings.
+	 *
+	 * Systems processed in parallel have to make structural changes through the CommandBuffer,
+	 * which is then played back once at the end of process.
+	 */
+	public void setParallelProcessing(boolean parallel) {
+		systemManager.setParallelProcessing(parallel);
+	}
+
+	/**
+	 * Check if systems change components they got through ComponentMappers annotated with
+	 * {@link Read}, an IllegalStateException is thrown after processing a system that did.
+	 * Copies the fields of every component retrieved through those mappers, so only use it
+	 * while debugging.
+	 */
+	public void setCheckReadOnlyMappers(boolean check) {
+		systemManager.setCheckReadOnlyMappers(check);
+	}
+
 	/**
 	 * Use this to clear everything in the EntityWorld. Use with care.
 	 */
@@ -272,25 +715,10 @@ public final class EntityWorld {
 		entitydataManager.clear();
 		entityIds.clear();
 		eventManager.clear();
-		lastUsedId = 0;
-		numFreedIds = 0;
+		commandBuffer.clear();
 		System.gc();
 	}
 
-	static List<Component> emptyUnmodifiableList = Collections.unmodifiableList(new ArrayList<Component>(0));
-
-	/** Return a list of components that were added to an entity before it was added to a world */
-	static List<Component> getScheduledAdds(Entity e) {
-		List<Component> scheduledAdds = EntityWorld.scheduledAdds.get(e);
-		return scheduledAdds == null ? emptyUnmodifiableList : scheduledAdds;
-	}
-
-	/** Return a list of components that were removed from an entity before it was added to a world */
-	static List<Component> getScheduledRemoves(Entity e) {
-		List<Component> scheduledRemoves = EntityWorld.scheduledRemoves.get(e);
-		return scheduledRemoves == null ? emptyUnmodifiableList : scheduledRemoves;
-	}
-
 	/**
 	 * Add components to an entity, updating its Family and adding it to the new systems.
 	 */
@@ -299,14 +727,8 @@ public final class EntityWorld {
 
 		//If an entity is not yet added to a world, its EntityData is null
 		if (oldData == null) {
-			//Schedule the component for adding so its added once the entity is added to a world.
-			List<Component> scheduled = scheduledAdds.get(e);
-			if (scheduled == null) {
-				scheduled = new LinkedList<Component>();
-				scheduledAdds.put(e, scheduled);
-			}
-			for (Component o : components)
-				scheduled.add(o);
+			//Stage the components on the entity so they are added once the entity is added to a world.
+			e.stageAdd(components);
 		//Entity is added to a world.
 		} else {
 			EntityWorld world = oldData.world;
@@ -315,10 +737,8 @@ public final class EntityWorld {
 			world.componentManager.addComponent(e, components);
 			//addComponent updates the entities EntityData
 			EntityFamily newData = e.family;
-			RECSBits newSystemBits = newData.systemBits;
-			RECSBits addedSystemBits = oldSystemBits.getAddedBits(newSystemBits);
-
-			world.systemManager.addEntityToSystems(e, addedSystemBits);
+			world.moveEntity(e, oldData, newData);
+			world.updateSystems(e, oldSystemBits, newData.systemBits);
 		}
 	}
 
@@ -330,14 +750,8 @@ public final class EntityWorld {
 
 		//If an entity is not yet added to a world, its EntityData is null
 		if (oldData == null) {
-			//Schedule the component for removal so its removed once the entity is added to a world.
-			List<Component> scheduled = scheduledRemoves.get(e);
-			if (scheduled == null) {
-				scheduled = new LinkedList<Component>();
-				scheduledRemoves.put(e, scheduled);
-			}
-			for (Component o : components)
-				scheduled.add(o);
+			//Stage the components on the entity so they are removed once the entity is added to a world.
+			e.stageRemove(components);
 		//Entity is added to a world.
 		} else {
 			EntityWorld world = oldData.world;
@@ -346,10 +760,33 @@ public final class EntityWorld {
 			world.componentManager.removeComponent(e, components);
 			//removeComponent updates the entities EntityData
 			EntityFamily newData = e.family;
-			RECSBits newSystemBits = newData.systemBits;
-			RECSBits removedSystemBits = oldSystemBits.getRemovedBits(newSystemBits);
+			world.moveEntity(e, oldData, newData);
+			world.updateSystems(e, oldSystemBits, newData.systemBits);
+		}
+	}
+
+	/**
+	 * Move an entity between systems after its components changed. Adding a component can also
+	 * remove the entity from systems excluding it, and removing one can add it to systems.
+	 */
+	private void updateSystems(Entity e, RECSBits oldSystemBits, RECSBits newSystemBits) {
+		if (oldSystemBits == newSystemBits)
+			return;
+		oldSystemBits.andNotInto(newSystemBits, changedSystemBits);
+		systemManager.removeEntityFromSystems(e, changedSystemBits);
+		newSystemBits.andNotInto(oldSystemBits, changedSystemBits);
+		systemManager.addEntityToSystems(e, changedSystemBits);
+	}
 
-			world.systemManager.removeEntityFromSystems(e, removedSystemBits);
+	/**
+	 * Move an entity to the chunks of its new family after its components changed.
+	 */
+	private void moveEntity(Entity e, EntityFamily oldFamily, EntityFamily newFamily) {
+		if (oldFamily == newFamily) {
+			newFamily.updateEntity(e);
+		} else {
+			oldFamily.removeEntity(e);
+			newFamily.addEntity(e);
 		}
 	}
 
@@ -371,6 +808,27 @@ public final class EntityWorld {
 		componentManager.registerDestuctionListener(listener, componentClass);
 	}
 
+	/**
+	 * Register a ComponentPool to the world so it receives the removed components of the given class.
+	 */
+	void registerComponentPool(ComponentPool<?> pool, Class<? extends Component> componentClass) {
+		componentManager.registerComponentPool(pool, componentClass);
+	}
+
+	/**
+	 * Register an EntityPool to the world so it receives the removed entities of the given class.
+	 */
+	void registerEntityPool(EntityPool<?> pool, Class<? extends Entity> entityClass) {
+		entitydataManager.registerEntityPool(pool, entityClass);
+	}
+
+	/**
+	 * Returns true if the component is held by a field of the class of the entity.
+	 */
+	boolean isDeclaredComponent(Entity e, int componentId) {
+		return entitydataManager.isDeclaredComponent(e, componentId);
+	}
+
 	/**
 	 * Get the systembits matching the given componentbits.
 	 */
@@ -389,18 +847,7 @@ public final class EntityWorld {
 	 * Get a new EntityId.
 	 */
 	int getNewEntityId() {
-		// if the amount of freed ids is more than 20% of the amount of id's, recycle ids.
-		if (numFreedIds > entityIds.numBits() * 0.2f) {
-			lastUsedId = 0;
-			numFreedIds = 0;
-		}
-		//Search for a free id.
-		do {
-			lastUsedId++;
-		} while (entityIds.get(lastUsedId));
-		entityIds.set(lastUsedId);
-
-		return lastUsedId;
+		return entityIds.obtain();
 	}
 
 	/**
@@ -417,6 +864,27 @@ public final class EntityWorld {
 		eventManager.registerListener(listener, eventType);
 	}
 
+	/**
+	 * Get the component mapper of the component class with the given id.
+	 */
+	ComponentMapper<?> getComponentMapper(int componentId) {
+		return componentManager.getComponentMapper(componentId);
+	}
+
+	/**
+	 * Get the number of families in the world.
+	 */
+	int getFamilyCount() {
+		return entitydataManager.getFamilyCount();
+	}
+
+	/**
+	 * Add the families processed by the system to the array, starting at the family with the given index.
+	 */
+	void getFamilies(EntityQuery query, int fromIndex, Array<EntityFamily> out) {
+		entitydataManager.getFamilies(query, fromIndex, out);
+	}
+
 	/**
 	 *  See {@link EntityDataManager#getEntityFamily(RECSBits) EntityDataManager.getEntityFamily(RECSBits componentBits)}
 	 */
@@ -0,0 +1,46 @@
+package recs;
+
+import recs.utils.RECSBits;
+
+/**
+ * Immutable set of component ids identifying an EntityFamily. Keys are interned by the
+ * EntityDataManager so every family has its own key, the hash is computed once and trailing
+ * empty words are dropped so equal sets of components always match the same key. Keys are
+ * compared by identity, the table of the EntityDataManager uses hash and matches.
+ *
+ * @author Enrico van Oosten
+ */
+final class FamilyKey {
+	private final long[] words;
+	final int hash;
+
+	FamilyKey(RECSBits componentBits) {
+		words = new long[componentBits.wordCount()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = componentBits.getWord(i);
+		hash = hash(componentBits);
+	}
+
+	/**
+	 * Hash the components of the bits the same way as the key of those bits.
+	 */
+	static int hash(RECSBits componentBits) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int i = 0, count = componentBits.wordCount(); i < count; i++)
+			h = (h ^ componentBits.getWord(i)) * 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns if this key holds exactly the set bits of the given bits.
+	 */
+	boolean matches(RECSBits componentBits) {
+		if (componentBits.wordCount() != words.length)
+			return false;
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != componentBits.getWord(i))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,78 @@
+package recs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Returned by {@link EntityWorld#process(float)}, is done when the runs of the EntityTaskSystems
+ * started during that process are finished. Await the frame before changing data the task
+ * systems use, instead of letting the next frame overlap with them.
+ *
+ * @author Enrico van Oosten
+ */
+public final class Frame {
+	private int pendingTasks = 0;
+	private Throwable failure = null;
+
+	Frame() {
+	}
+
+	synchronized void taskPosted() {
+		pendingTasks++;
+	}
+
+	synchronized void taskFinished(Throwable t) {
+		if (t != null && failure == null)
+			failure = t;
+		if (--pendingTasks == 0)
+			notifyAll();
+	}
+
+	/**
+	 * Returns true if all the task systems of this frame finished running.
+	 */
+	public synchronized boolean isDone() {
+		return pendingTasks == 0;
+	}
+
+	/**
+	 * Wait until all the task systems of this frame finished running. Throws a RuntimeException
+	 * if one of them threw.
+	 */
+	public synchronized void await() {
+		while (pendingTasks > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for the frame", e);
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Wait at most the given time for the task systems of this frame, returns true if they all
+	 * finished. Throws a RuntimeException if one of them threw.
+	 */
+	public synchronized boolean await(long timeout, TimeUnit unit) {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		while (pendingTasks > 0) {
+			long remaining = end - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for the frame", e);
+			}
+		}
+		checkFailure();
+		return true;
+	}
+
+	private void checkFailure() {
+		if (failure != null)
+			throw new RuntimeException("Exception while running a task system", failure);
+	}
+}
@@ -0,0 +1,106 @@
+package recs;
+
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.IntMap.Keys;
+import com.badlogic.gdx.utils.IntMap.Values;
+
+/**
+ * ComponentMapper storing its components in an IntMap keyed by entity id.
+ * See {@link ComponentStorage#HASHED}
+ *
+ * @author Enrico van Oosten
+ */
+final class HashComponentMapper<T extends Component> extends ComponentMapper<T> {
+	final IntMap<T> components;
+
+	private final HashIds idIterator;
+	private final HashComponents componentIterator;
+
+	HashComponentMapper() {
+		components = new IntMap<T>();
+		idIterator = new HashIds();
+		componentIterator = new HashComponents();
+	}
+
+	@Override
+	Component remove(int entityId) {
+		return components.remove(entityId);
+	}
+
+	@Override
+	public T get(int id) {
+		return components.get(id);
+	}
+
+	@Override
+	public int size() {
+		return components.size;
+	}
+
+	@Override
+	public Ids getIds() {
+		idIterator.reset();
+		return idIterator;
+	}
+
+	@Override
+	public Components<T> getComponents() {
+		componentIterator.reset();
+		return componentIterator;
+	}
+
+	@Override
+	Ids newIds() {
+		return new HashIds();
+	}
+
+	@Override
+	Components<T> newComponents() {
+		return new HashComponents();
+	}
+
+	@Override
+	void ensureCapacity(int maxEntityId, int additionalComponents) {
+		components.ensureCapacity(additionalComponents);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void add(int entityId, Component o) {
+		components.put(entityId, (T) o);
+	}
+
+	private final class HashIds extends Ids {
+		private Keys keys;
+
+		@Override
+		public void reset() {
+			keys = components.keys();
+			hasNext = keys.hasNext;
+		}
+
+		@Override
+		public int next() {
+			int next = keys.next();
+			hasNext = keys.hasNext;
+			return next;
+		}
+	}
+
+	private final class HashComponents extends Components<T> {
+		private Values<T> values;
+
+		@Override
+		public void reset() {
+			values = components.values();
+		}
+
+		public boolean hasNext() {
+			return values.hasNext();
+		}
+
+		public T next() {
+			return values.next();
+		}
+	}
+}
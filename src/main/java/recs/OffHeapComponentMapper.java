@@ -0,0 +1,219 @@
+package recs;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ComponentMapper storing the fields of its components outside of the java heap in a direct
+ * ByteBuffer, so large amounts of component data do not have to be traced by the garbage
+ * collector. Every entity id has a record of getStride() bytes in the buffer, holding the fields
+ * at the offsets returned by getFieldOffset(). Only components with nothing but primitive fields
+ * and a constructor without arguments can be stored this way. See {@link ComponentStorage#OFF_HEAP}
+ *
+ * Like the {@link ColumnarComponentMapper}, get() returns a single reused instance filled with the
+ * values of the entity. Change the values with set() or the typed accessors:
+ *
+ * <pre>
+ * int x = positionMapper.getFieldOffset("x");
+ * positionMapper.putFloat(id, x, positionMapper.getFloat(id, x) + 1);
+ * </pre>
+ *
+ * @author Enrico van Oosten
+ */
+public final class OffHeapComponentMapper<T extends Component> extends ValueComponentMapper<T> {
+	/** Byte offset of every field within a record */
+	private final int[] offsets;
+	/** Size of a record in bytes */
+	private final int stride;
+	private ByteBuffer buffer;
+
+	OffHeapComponentMapper(ComponentLayout layout) {
+		super(layout);
+		offsets = new int[layout.fields.length];
+
+		//Place the largest fields first so every field is aligned to its size.
+		int offset = 0;
+		for (int fieldSize = 8; fieldSize >= 1; fieldSize >>= 1) {
+			for (int i = 0; i < offsets.length; i++) {
+				if (sizeOf(layout.types[i]) == fieldSize) {
+					offsets[i] = offset;
+					offset += fieldSize;
+				}
+			}
+		}
+		//Round up to 8 bytes so the next record is aligned as well, with at least one byte per record.
+		stride = Math.max(8, (offset + 7) & ~7);
+
+		buffer = ByteBuffer.allocateDirect(capacity * stride).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Get the offset of a field within the record of an entity, used with the typed accessors.
+	 */
+	public int getFieldOffset(String field) {
+		for (int i = 0; i < layout.fields.length; i++) {
+			if (layout.fields[i].getName().equals(field))
+				return offsets[i];
+		}
+		throw new IllegalArgumentException("Component " + layout.componentClass.getName() + " has no field " + field);
+	}
+
+	/**
+	 * The size in bytes of the record of every entity.
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Get a view of the buffer holding the records of all entity ids, the record of an entity
+	 * starts at entityId * getStride(). Can be used to write all the data to a channel in a single
+	 * bulk copy, records of entities without the component contain stale data. The view is no
+	 * longer used by the mapper after an entity with a higher id is added.
+	 */
+	public ByteBuffer getBuffer() {
+		ByteBuffer view = buffer.duplicate().order(buffer.order());
+		view.clear();
+		return view;
+	}
+
+	public boolean getBoolean(int entityId, int fieldOffset) {
+		return buffer.get(entityId * stride + fieldOffset) != 0;
+	}
+
+	public void putBoolean(int entityId, int fieldOffset, boolean value) {
+		buffer.put(entityId * stride + fieldOffset, value ? (byte) 1 : (byte) 0);
+	}
+
+	public byte getByte(int entityId, int fieldOffset) {
+		return buffer.get(entityId * stride + fieldOffset);
+	}
+
+	public void putByte(int entityId, int fieldOffset, byte value) {
+		buffer.put(entityId * stride + fieldOffset, value);
+	}
+
+	public char getChar(int entityId, int fieldOffset) {
+		return buffer.getChar(entityId * stride + fieldOffset);
+	}
+
+	public void putChar(int entityId, int fieldOffset, char value) {
+		buffer.putChar(entityId * stride + fieldOffset, value);
+	}
+
+	public short getShort(int entityId, int fieldOffset) {
+		return buffer.getShort(entityId * stride + fieldOffset);
+	}
+
+	public void putShort(int entityId, int fieldOffset, short value) {
+		buffer.putShort(entityId * stride + fieldOffset, value);
+	}
+
+	public int getInt(int entityId, int fieldOffset) {
+		return buffer.getInt(entityId * stride + fieldOffset);
+	}
+
+	public void putInt(int entityId, int fieldOffset, int value) {
+		buffer.putInt(entityId * stride + fieldOffset, value);
+	}
+
+	public long getLong(int entityId, int fieldOffset) {
+		return buffer.getLong(entityId * stride + fieldOffset);
+	}
+
+	public void putLong(int entityId, int fieldOffset, long value) {
+		buffer.putLong(entityId * stride + fieldOffset, value);
+	}
+
+	public float getFloat(int entityId, int fieldOffset) {
+		return buffer.getFloat(entityId * stride + fieldOffset);
+	}
+
+	public void putFloat(int entityId, int fieldOffset, float value) {
+		buffer.putFloat(entityId * stride + fieldOffset, value);
+	}
+
+	public double getDouble(int entityId, int fieldOffset) {
+		return buffer.getDouble(entityId * stride + fieldOffset);
+	}
+
+	public void putDouble(int entityId, int fieldOffset, double value) {
+		buffer.putDouble(entityId * stride + fieldOffset, value);
+	}
+
+	@Override
+	void grow(int newCapacity) {
+		ByteBuffer newBuffer = ByteBuffer.allocateDirect(newCapacity * stride).order(ByteOrder.nativeOrder());
+		buffer.clear();
+		newBuffer.put(buffer);
+		newBuffer.clear();
+		buffer = newBuffer;
+	}
+
+	/** Copy the field values of the component into the buffer */
+	@Override
+	void store(int id, Component component) {
+		Field[] fields = layout.fields;
+		int[] types = layout.types;
+		int record = id * stride;
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				int index = record + offsets[i];
+				switch (types[i]) {
+				case ComponentLayout.BOOLEAN: buffer.put(index, fields[i].getBoolean(component) ? (byte) 1 : (byte) 0); break;
+				case ComponentLayout.BYTE: buffer.put(index, fields[i].getByte(component)); break;
+				case ComponentLayout.CHAR: buffer.putChar(index, fields[i].getChar(component)); break;
+				case ComponentLayout.SHORT: buffer.putShort(index, fields[i].getShort(component)); break;
+				case ComponentLayout.INT: buffer.putInt(index, fields[i].getInt(component)); break;
+				case ComponentLayout.LONG: buffer.putLong(index, fields[i].getLong(component)); break;
+				case ComponentLayout.FLOAT: buffer.putFloat(index, fields[i].getFloat(component)); break;
+				case ComponentLayout.DOUBLE: buffer.putDouble(index, fields[i].getDouble(component)); break;
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Copy the values in the buffer into the fields of the component */
+	@Override
+	void load(int id, Component component) {
+		Field[] fields = layout.fields;
+		int[] types = layout.types;
+		int record = id * stride;
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				int index = record + offsets[i];
+				switch (types[i]) {
+				case ComponentLayout.BOOLEAN: fields[i].setBoolean(component, buffer.get(index) != 0); break;
+				case ComponentLayout.BYTE: fields[i].setByte(component, buffer.get(index)); break;
+				case ComponentLayout.CHAR: fields[i].setChar(component, buffer.getChar(index)); break;
+				case ComponentLayout.SHORT: fields[i].setShort(component, buffer.getShort(index)); break;
+				case ComponentLayout.INT: fields[i].setInt(component, buffer.getInt(index)); break;
+				case ComponentLayout.LONG: fields[i].setLong(component, buffer.getLong(index)); break;
+				case ComponentLayout.FLOAT: fields[i].setFloat(component, buffer.getFloat(index)); break;
+				case ComponentLayout.DOUBLE: fields[i].setDouble(component, buffer.getDouble(index)); break;
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int sizeOf(int type) {
+		switch (type) {
+		case ComponentLayout.LONG:
+		case ComponentLayout.DOUBLE:
+			return 8;
+		case ComponentLayout.INT:
+		case ComponentLayout.FLOAT:
+			return 4;
+		case ComponentLayout.CHAR:
+		case ComponentLayout.SHORT:
+			return 2;
+		default:
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package recs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An EntitySystem which calls processEntity for its entities on all the cores of the machine.
+ * The entities are handed out in batches to the threads as they finish their previous batch,
+ * and the world waits until all the entities are processed before processing the next system.
+ * The threads are shared with the other parallel systems, see {@link EntityWorld#setWorkerExecutor}.
+ *
+ * processEntity is called from several threads at once, so it may only change the components of
+ * the entity it is called for. Add and remove entities or components through the
+ * {@link CommandBuffer} of the world.
+ *
+ * Mappers of components stored as values fill one reused instance in get(), read them through a
+ * field annotated with {@link Read} which fills an instance per thread, or use the columns of the
+ * mapper. The iterators of a mapper are shared by every thread and can not be used here.
+ *
+ * @author Enrico van Oosten
+ */
+public abstract class ParallelEntitySystem extends EntitySystem {
+	/** The smallest number of entities handed to a thread at once */
+	private int minBatchSize = 64;
+
+	/** The ids of the entities being processed */
+	private int[] ids;
+	private int numIds;
+	private float delta;
+	private int batchSize;
+	private final AtomicInteger nextIndex = new AtomicInteger();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * Helpers only join while the system is open, and the processing thread only waits for the
+	 * helpers that joined. Helpers still queued behind other work are never waited for, so a
+	 * parallel system can run on a thread of the same pool without deadlocking.
+	 */
+	private final Object lock = new Object();
+	private boolean open = false;
+	private int runningHelpers = 0;
+	private final Runnable helper = new Runnable() {
+		public void run() {
+			synchronized (lock) {
+				if (!open)
+					return;
+				runningHelpers++;
+			}
+			try {
+				processBatches();
+			} finally {
+				synchronized (lock) {
+					runningHelpers--;
+					lock.notifyAll();
+				}
+			}
+		}
+	};
+
+	public ParallelEntitySystem(Class<? extends Component>... components) {
+		super(components);
+	}
+
+	/**
+	 * Set the smallest number of entities a thread processes at once, systems with expensive
+	 * entities can use a lower number.
+	 */
+	public void setMinBatchSize(int minBatchSize) {
+		this.minBatchSize = Math.max(1, minBatchSize);
+	}
+
+	@Override
+	protected void processSystem(float deltaInSec) {
+		collectIds();
+		if (numIds == 0)
+			return;
+		delta = deltaInSec;
+		nextIndex.set(0);
+		failure.set(null);
+		//Around eight batches per thread, so threads finishing early take over the remaining work.
+		batchSize = Math.max(minBatchSize, numIds / (world.getParallelism() * 8));
+
+		int numBatches = (numIds + batchSize - 1) / batchSize;
+		int numHelpers = Math.min(numBatches, world.getParallelism()) - 1;
+		synchronized (lock) {
+			open = true;
+		}
+		for (int i = 0; i < numHelpers; i++)
+			world.getWorkers().execute(helper);
+		processBatches();
+		synchronized (lock) {
+			open = false;
+			while (runningHelpers > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for " + getClass().getName(), e);
+				}
+			}
+		}
+
+		Throwable t = failure.get();
+		if (t != null)
+			throw new RuntimeException("Exception while processing " + getClass().getName(), t);
+	}
+
+	/** Take batches of entities and process them until all entities are taken */
+	private void processBatches() {
+		try {
+			int start;
+			while ((start = nextIndex.getAndAdd(batchSize)) < numIds) {
+				int end = Math.min(start + batchSize, numIds);
+				for (int i = start; i < end; i++)
+					processEntity(ids[i], delta);
+			}
+		} catch (Throwable t) {
+			failure.compareAndSet(null, t);
+			//Let the other threads stop as well.
+			nextIndex.set(numIds);
+		}
+	}
+
+	/** Take the packed ids of the entities of the system, the threads split them into ranges */
+	private void collectIds() {
+		entityIds.sort();
+		ids = entityIds.items;
+		numIds = entityIds.size;
+	}
+}
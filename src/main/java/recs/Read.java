@@ -0,0 +1,25 @@
+package recs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a ComponentMapper field of a system as only reading its components. The field is set to
+ * a view without add or set methods, and systems which only read a component can be processed at
+ * the same time, see {@link EntityWorld#setParallelProcessing(boolean)}.
+ *
+ * Every view iterates with iterators of its own, and fills an instance of its own when the
+ * components are only stored as values, one per thread for a {@link ParallelEntitySystem}. The
+ * iterators of one view are reused by every call, so a system should not iterate them from
+ * several threads at once.
+ *
+ * The view has to be declared as a ComponentMapper, not as one of the specific mapper types.
+ *
+ * @author Enrico van Oosten
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Read {
+}
@@ -0,0 +1,233 @@
+package recs;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * The view set to ComponentMapper fields annotated with {@link Read}. Only retrieves components
+ * from the mapper of the world, with iterators of its own, so systems reading the same component
+ * can be processed on different threads at the same time.
+ *
+ * Mappers which only store the values of components fill a reused instance in get(). The view
+ * fills an instance of its own instead, and an instance per thread for a ParallelEntitySystem.
+ * The iterators of a view are still reused by every call, so one view should not be iterated by
+ * several threads at once.
+ *
+ * When checking writes, the fields of every component handed out are copied and compared again
+ * after the system is processed, see {@link EntityWorld#setCheckReadOnlyMappers(boolean)}.
+ * Mappers which only store the values of components hand out an instance of the view, writes to
+ * it never reach the stored values and are not checked.
+ *
+ * @author Enrico van Oosten
+ */
+final class ReadOnlyComponentMapper<T extends Component> extends ComponentMapper<T> {
+	private static final ObjectMap<Class<?>, Field[]> fieldCache = new ObjectMap<Class<?>, Field[]>();
+
+	private final ComponentMapper<T> mapper;
+	private final Ids ids;
+	private final ReadOnlyComponents components;
+	/** The mapper if it only stores values, with the instance or the instance per thread it fills */
+	private final ValueComponentMapper<T> values;
+	private final T flyweight;
+	private final ThreadLocal<T> threadFlyweights;
+	/** The values of the fields of the components handed out since the last check */
+	private final IdentityMap<Component, Object[]> snapshots = new IdentityMap<Component, Object[]>();
+	boolean checkWrites = false;
+
+	ReadOnlyComponentMapper(ComponentMapper<T> mapper, boolean perThread) {
+		this.mapper = mapper;
+		componentId = mapper.componentId;
+		ids = mapper.newIds();
+		components = new ReadOnlyComponents(mapper.newComponents());
+		if (mapper instanceof ValueComponentMapper) {
+			values = (ValueComponentMapper<T>) mapper;
+			flyweight = perThread ? null : values.newInstance();
+			threadFlyweights = !perThread ? null : new ThreadLocal<T>() {
+				@Override
+				protected T initialValue() {
+					return values.newInstance();
+				}
+			};
+		} else {
+			values = null;
+			flyweight = null;
+			threadFlyweights = null;
+		}
+	}
+
+	@Override
+	boolean storesComponents() {
+		return mapper.storesComponents();
+	}
+
+	@Override
+	Component remove(int entityId) {
+		throw new UnsupportedOperationException("Components can not be removed through a read-only ComponentMapper");
+	}
+
+	@Override
+	void add(int entityId, Component o) {
+		throw new UnsupportedOperationException("Components can not be added through a read-only ComponentMapper");
+	}
+
+	@Override
+	void ensureCapacity(int maxEntityId, int additionalComponents) {
+		throw new UnsupportedOperationException("A read-only ComponentMapper does not store components");
+	}
+
+	@Override
+	public T get(int id) {
+		if (values != null)
+			return values.get(id, threadFlyweights != null ? threadFlyweights.get() : flyweight);
+		T component = mapper.get(id);
+		if (checkWrites)
+			snapshot(component);
+		return component;
+	}
+
+	@Override
+	public int size() {
+		return mapper.size();
+	}
+
+	@Override
+	public Ids getIds() {
+		ids.reset();
+		return ids;
+	}
+
+	@Override
+	public Components<T> getComponents() {
+		components.reset();
+		return components;
+	}
+
+	@Override
+	Ids newIds() {
+		return mapper.newIds();
+	}
+
+	@Override
+	Components<T> newComponents() {
+		return new ReadOnlyComponents(mapper.newComponents());
+	}
+
+	/** Remember the values of the fields of the component, if it was not handed out before */
+	private void snapshot(Component component) {
+		if (component == null || !mapper.storesComponents())
+			return;
+		synchronized (snapshots) {
+			if (snapshots.containsKey(component))
+				return;
+			Field[] fields = getFields(component.getClass());
+			Object[] values = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++)
+				values[i] = getValue(fields[i], component);
+			snapshots.put(component, values);
+		}
+	}
+
+	/**
+	 * Throw an IllegalStateException if a component handed out since the last check was changed,
+	 * forgets the handed out components afterwards.
+	 */
+	void checkWrites(EntitySystem system) {
+		synchronized (snapshots) {
+			try {
+				for (IdentityMap.Entry<Component, Object[]> entry : snapshots.entries()) {
+					Field[] fields = getFields(entry.key.getClass());
+					for (int i = 0; i < fields.length; i++) {
+						Object value = getValue(fields[i], entry.key);
+						Object old = entry.value[i];
+						if (old == null ? value != null : !old.equals(value))
+							throw new IllegalStateException(system.getClass().getName() + " changed " + fields[i].getName() + " of "
+									+ entry.key.getClass().getSimpleName() + " through a read-only ComponentMapper");
+					}
+				}
+			} finally {
+				snapshots.clear();
+			}
+		}
+	}
+
+	/** Get the instance fields of a component class and its superclasses */
+	private static Field[] getFields(Class<?> componentClass) {
+		synchronized (fieldCache) {
+			Field[] fields = fieldCache.get(componentClass);
+			if (fields == null) {
+				Array<Field> list = new Array<Field>(true, 8, Field.class);
+				for (Class<?> c = componentClass; c != null && c != Object.class; c = c.getSuperclass()) {
+					for (Field field : c.getDeclaredFields()) {
+						if (Modifier.isStatic(field.getModifiers()))
+							continue;
+						field.setAccessible(true);
+						list.add(field);
+					}
+				}
+				fields = list.toArray();
+				fieldCache.put(componentClass, fields);
+			}
+			return fields;
+		}
+	}
+
+	/** Primitive values are compared by value, references only by identity */
+	private static Object getValue(Field field, Component component) {
+		try {
+			Object value = field.get(component);
+			return value == null || field.getType().isPrimitive() ? value : new Reference(value);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static final class Reference {
+		private final Object object;
+
+		Reference(Object object) {
+			this.object = object;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Reference && ((Reference) other).object == object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(object);
+		}
+	}
+
+	/**
+	 * Iterates the components of the mapper, remembering the values of the components when
+	 * checking writes.
+	 */
+	private class ReadOnlyComponents extends Components<T> {
+		private final Components<T> iterator;
+
+		ReadOnlyComponents(Components<T> iterator) {
+			this.iterator = iterator;
+		}
+
+		@Override
+		public void reset() {
+			iterator.reset();
+		}
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public T next() {
+			T component = iterator.next();
+			if (checkWrites)
+				snapshot(component);
+			return component;
+		}
+	}
+}
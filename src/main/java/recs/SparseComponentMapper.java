@@ -0,0 +1,200 @@
+package recs;
+
+import java.lang.reflect.Array;
+import java.util.NoSuchElementException;
+
+/**
+ * ComponentMapper storing its components in a sparse set. A sparse array indexed by entity id
+ * points into packed arrays of entity ids and components, so all the components can be
+ * iterated without gaps. See {@link ComponentStorage#SPARSE_SET}
+ *
+ * To iterate all components in a tight loop, declare the mapper field in a system as a
+ * SparseComponentMapper and use:
+ *
+ * <pre>
+ * int[] ids = mapper.getDenseIds();
+ * Position[] positions = mapper.getDenseComponents();
+ * for (int i = 0, size = mapper.size(); i &lt; size; i++)
+ *     //operate on ids[i] and positions[i]
+ * </pre>
+ *
+ * Removing a component moves the last component into its place, so do not remove components
+ * while iterating the dense arrays.
+ *
+ * @author Enrico van Oosten
+ */
+public final class SparseComponentMapper<T extends Component> extends ComponentMapper<T> {
+	/** Index into the dense arrays for every entity id, only valid if denseIds points back */
+	private int[] sparse;
+	private int[] denseIds;
+	private T[] denseComponents;
+	private int size = 0;
+
+	private final SparseIds idIterator;
+	private final SparseComponents componentIterator;
+
+	@SuppressWarnings("unchecked")
+	SparseComponentMapper(Class<? extends Component> componentClass) {
+		sparse = new int[16];
+		denseIds = new int[16];
+		denseComponents = (T[]) Array.newInstance(componentClass, 16);
+		idIterator = new SparseIds();
+		componentIterator = new SparseComponents();
+	}
+
+	@Override
+	Component remove(int entityId) {
+		int index = indexOf(entityId);
+		if (index == -1)
+			return null;
+		T removed = denseComponents[index];
+
+		//Move the last component into the freed slot.
+		int last = --size;
+		int lastId = denseIds[last];
+		denseIds[index] = lastId;
+		denseComponents[index] = denseComponents[last];
+		sparse[lastId] = index;
+		denseComponents[last] = null;
+		return removed;
+	}
+
+	@Override
+	public T get(int id) {
+		int index = indexOf(id);
+		return index == -1 ? null : denseComponents[index];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The ids of the entities with a component, packed in the first size() elements.
+	 * The array is replaced when the mapper grows, so retrieve it again after adding components.
+	 */
+	public int[] getDenseIds() {
+		return denseIds;
+	}
+
+	/**
+	 * The components, packed in the first size() elements in the same order as getDenseIds().
+	 * The array is replaced when the mapper grows, so retrieve it again after adding components.
+	 */
+	public T[] getDenseComponents() {
+		return denseComponents;
+	}
+
+	@Override
+	public Ids getIds() {
+		idIterator.reset();
+		return idIterator;
+	}
+
+	@Override
+	public Components<T> getComponents() {
+		componentIterator.reset();
+		return componentIterator;
+	}
+
+	@Override
+	Ids newIds() {
+		return new SparseIds();
+	}
+
+	@Override
+	Components<T> newComponents() {
+		return new SparseComponents();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void add(int entityId, Component o) {
+		int index = indexOf(entityId);
+		if (index != -1) {
+			denseComponents[index] = (T) o;
+			return;
+		}
+		if (entityId >= sparse.length)
+			growSparse(Math.max(entityId + 1, sparse.length * 2));
+		if (size == denseIds.length)
+			growDense(size * 2);
+		sparse[entityId] = size;
+		denseIds[size] = entityId;
+		denseComponents[size] = (T) o;
+		size++;
+	}
+
+	@Override
+	void ensureCapacity(int maxEntityId, int additionalComponents) {
+		if (maxEntityId >= sparse.length)
+			growSparse(maxEntityId + 1);
+		if (size + additionalComponents > denseIds.length)
+			growDense(size + additionalComponents);
+	}
+
+	private void growSparse(int newLength) {
+		int[] newSparse = new int[newLength];
+		System.arraycopy(sparse, 0, newSparse, 0, sparse.length);
+		sparse = newSparse;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void growDense(int newLength) {
+		int[] newIds = new int[newLength];
+		System.arraycopy(denseIds, 0, newIds, 0, size);
+		denseIds = newIds;
+		T[] newComponents = (T[]) Array.newInstance(denseComponents.getClass().getComponentType(), newLength);
+		System.arraycopy(denseComponents, 0, newComponents, 0, size);
+		denseComponents = newComponents;
+	}
+
+	/** Returns the index of the entity in the dense arrays, or -1 if it has no component */
+	private int indexOf(int entityId) {
+		if (entityId < 0 || entityId >= sparse.length)
+			return -1;
+		int index = sparse[entityId];
+		if (index < size && denseIds[index] == entityId)
+			return index;
+		return -1;
+	}
+
+	private final class SparseIds extends Ids {
+		private int index;
+
+		@Override
+		public void reset() {
+			index = 0;
+			hasNext = size > 0;
+		}
+
+		@Override
+		public int next() {
+			if (!hasNext)
+				throw new NoSuchElementException();
+			int id = denseIds[index++];
+			hasNext = index < size;
+			return id;
+		}
+	}
+
+	private final class SparseComponents extends Components<T> {
+		private int index;
+
+		@Override
+		public void reset() {
+			index = 0;
+		}
+
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		public T next() {
+			if (index >= size)
+				throw new NoSuchElementException();
+			return denseComponents[index++];
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package recs;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Processes the systems of a world in parallel. Every pair of conflicting systems, and every
+ * system with a system it runs after, is linked in a graph; a system is started as soon as all
+ * the systems before it in the graph are finished.
+ *
+ * Two systems conflict if one writes a component the other reads or writes. Conflicting systems
+ * keep the order of {@link #order(List)}, the order they were added in unless runAfter orders
+ * them otherwise.
+ *
+ * @author Enrico van Oosten
+ */
+final class SystemScheduler {
+	private final EntitySystem[] systems;
+	/** For every system, the indices of the systems that wait for it */
+	private final int[][] dependents;
+	/** For every system, the number of systems it waits for */
+	private final int[] dependencyCounts;
+
+	private final int[] remaining;
+	private final Runnable[] tasks;
+	private int unfinished;
+	private float delta;
+	private Executor executor;
+	private EntitySystemManager manager;
+	private volatile Throwable failure;
+
+	/**
+	 * @param orderedSystems
+	 *            The systems in the order of {@link #order(List)}, so every edge of the graph
+	 *            points forward and the graph has no cycles.
+	 */
+	SystemScheduler(EntitySystem[] orderedSystems) {
+		int n = orderedSystems.length;
+		systems = orderedSystems;
+
+		//before[i][j] is true if system i has to finish before system j starts.
+		boolean[][] before = new boolean[n][n];
+		for (int j = 0; j < n; j++) {
+			for (EntitySystem after : systems[j].runAfter) {
+				int i = indexOf(systems, after);
+				if (i != -1)
+					before[i][j] = true;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				if (conflicts(systems[i], systems[j]))
+					before[i][j] = true;
+			}
+		}
+
+		dependents = new int[n][];
+		dependencyCounts = new int[n];
+		IntArray list = new IntArray();
+		for (int i = 0; i < n; i++) {
+			list.clear();
+			for (int j = 0; j < n; j++) {
+				if (before[i][j]) {
+					list.add(j);
+					dependencyCounts[j]++;
+				}
+			}
+			dependents[i] = list.toArray();
+		}
+
+		remaining = new int[n];
+		tasks = new Runnable[n];
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			tasks[i] = new Runnable() {
+				public void run() {
+					runSystem(index);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns true if the systems can not be processed at the same time, systems which only read
+	 * the same components do not conflict.
+	 */
+	static boolean conflicts(EntitySystem a, EntitySystem b) {
+		if (a.usesAllComponents || b.usesAllComponents)
+			return true;
+		return a.writeComponents.intersects(b.writeComponents)
+				|| a.writeComponents.intersects(b.readComponents)
+				|| b.writeComponents.intersects(a.readComponents);
+	}
+
+	/**
+	 * Sort the systems so every system comes after the systems it runs after, systems without
+	 * such an ordering keep the order they were added in. Throws if the runAfter declarations
+	 * make systems wait for each other.
+	 */
+	static EntitySystem[] order(List<EntitySystem> systemList) {
+		int n = systemList.size();
+		EntitySystem[] added = systemList.toArray(new EntitySystem[n]);
+		EntitySystem[] ordered = new EntitySystem[n];
+		boolean[] placed = new boolean[n];
+		for (int k = 0; k < n; k++) {
+			//Place the first added system of which all the systems it runs after are placed.
+			int next = -1;
+			for (int j = 0; j < n && next == -1; j++) {
+				if (!placed[j] && runsAfterPlaced(added, placed, added[j]))
+					next = j;
+			}
+			if (next == -1)
+				throw new IllegalStateException("The runAfter declarations of the systems form a cycle");
+			placed[next] = true;
+			ordered[k] = added[next];
+		}
+		return ordered;
+	}
+
+	/** Returns true if the systems the system runs after are placed or not part of the world */
+	private static boolean runsAfterPlaced(EntitySystem[] systems, boolean[] placed, EntitySystem system) {
+		for (int i = 0; i < system.runAfter.size; i++) {
+			int index = indexOf(systems, system.runAfter.items[i]);
+			if (index != -1 && !placed[index])
+				return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(EntitySystem[] systems, EntitySystem system) {
+		for (int i = 0; i < systems.length; i++) {
+			if (systems[i] == system)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Process all the systems and wait until they are finished.
+	 */
+	synchronized void process(EntitySystemManager manager, float deltaInSec, Executor executor) {
+		this.manager = manager;
+		delta = deltaInSec;
+		this.executor = executor;
+		failure = null;
+		unfinished = systems.length;
+		System.arraycopy(dependencyCounts, 0, remaining, 0, remaining.length);
+		for (int i = 0; i < systems.length; i++) {
+			if (remaining[i] == 0)
+				executor.execute(tasks[i]);
+		}
+		while (unfinished > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while processing the systems", e);
+			}
+		}
+		if (failure != null)
+			throw new RuntimeException("Exception while processing the systems", failure);
+	}
+
+	private void runSystem(int index) {
+		EntitySystem system = systems[index];
+		try {
+			if (system.isEnabled() && failure == null)
+				manager.processSystem(system, delta);
+		} catch (Throwable t) {
+			synchronized (this) {
+				if (failure == null)
+					failure = t;
+			}
+		}
+		finished(index);
+	}
+
+	/** Start the systems waiting for the finished system which have nothing left to wait for */
+	private synchronized void finished(int index) {
+		for (int j : dependents[index]) {
+			if (--remaining[j] == 0)
+				executor.execute(tasks[j]);
+		}
+		unfinished--;
+		notifyAll();
+	}
+}
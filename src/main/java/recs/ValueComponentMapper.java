@@ -0,0 +1,193 @@
+package recs;
+
+import java.util.NoSuchElementException;
+
+import recs.utils.RECSBits;
+
+/**
+ * Base of the ComponentMappers which only store the field values of their components, indexed by
+ * entity id. Keeps track of the entities that have the component and hands out a reused instance
+ * filled with the values of an entity, the subclasses only load, store and grow the values.
+ *
+ * @author Enrico van Oosten
+ */
+abstract class ValueComponentMapper<T extends Component> extends ComponentMapper<T> {
+	final ComponentLayout layout;
+	/** Bits set for every entity id that has the component */
+	final RECSBits entities = new RECSBits();
+	/** The number of entity ids there is room for */
+	int capacity = 16;
+	private int size = 0;
+
+	/** Reused instance returned by get() */
+	private final T flyweight;
+
+	private final ValueIds idIterator;
+	private final ValueComponents componentIterator;
+
+	ValueComponentMapper(ComponentLayout layout) {
+		this.layout = layout;
+		flyweight = newInstance();
+		idIterator = new ValueIds();
+		componentIterator = new ValueComponents(flyweight);
+	}
+
+	@SuppressWarnings("unchecked")
+	T newInstance() {
+		return (T) layout.newInstance();
+	}
+
+	/** Copy the field values of the component into the storage of the entity */
+	abstract void store(int id, Component component);
+
+	/** Copy the stored values of the entity into the fields of the component */
+	abstract void load(int id, Component component);
+
+	/** Make room for the entity ids below the new capacity, keeping the stored values */
+	abstract void grow(int newCapacity);
+
+	/**
+	 * Returns a reused component filled with the values of the entity, or null if the entity
+	 * does not have the component.
+	 */
+	@Override
+	public T get(int id) {
+		return get(id, flyweight);
+	}
+
+	/**
+	 * Fill the given component with the values of the entity and return it, or return null if
+	 * the entity does not have the component.
+	 */
+	T get(int id, T component) {
+		if (!entities.get(id))
+			return null;
+		load(id, component);
+		return component;
+	}
+
+	/**
+	 * Store the values of the given component for an entity that has this component.
+	 */
+	public void set(int entityId, T component) {
+		if (!entities.get(entityId))
+			throw new IllegalArgumentException("Entity " + entityId + " does not have a " + layout.componentClass.getName());
+		store(entityId, component);
+	}
+
+	@Override
+	boolean storesComponents() {
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Ids getIds() {
+		idIterator.reset();
+		return idIterator;
+	}
+
+	/**
+	 * Iterates the components, every component returned is the same reused instance.
+	 */
+	@Override
+	public Components<T> getComponents() {
+		componentIterator.reset();
+		return componentIterator;
+	}
+
+	@Override
+	Ids newIds() {
+		return new ValueIds();
+	}
+
+	/**
+	 * Iterates the components, filling a new instance of its own.
+	 */
+	@Override
+	Components<T> newComponents() {
+		return new ValueComponents(newInstance());
+	}
+
+	@Override
+	Component remove(int entityId) {
+		if (!entities.get(entityId))
+			return null;
+		load(entityId, flyweight);
+		entities.clear(entityId);
+		size--;
+		return flyweight;
+	}
+
+	@Override
+	void ensureCapacity(int maxEntityId, int additionalComponents) {
+		if (maxEntityId >= capacity)
+			growTo(maxEntityId + 1);
+	}
+
+	@Override
+	void add(int entityId, Component o) {
+		if (entityId >= capacity)
+			growTo(Math.max(entityId + 1, capacity * 2));
+		if (!entities.get(entityId)) {
+			entities.set(entityId);
+			size++;
+		}
+		store(entityId, o);
+	}
+
+	private void growTo(int newCapacity) {
+		grow(newCapacity);
+		capacity = newCapacity;
+	}
+
+	private final class ValueIds extends Ids {
+		private int nextId;
+
+		@Override
+		public void reset() {
+			nextId = entities.nextSetBit(0);
+			hasNext = nextId != -1;
+		}
+
+		@Override
+		public int next() {
+			if (!hasNext)
+				throw new NoSuchElementException();
+			int id = nextId;
+			nextId = entities.nextSetBit(id + 1);
+			hasNext = nextId != -1;
+			return id;
+		}
+	}
+
+	private final class ValueComponents extends Components<T> {
+		private final T component;
+		private int nextId;
+
+		ValueComponents(T component) {
+			this.component = component;
+		}
+
+		@Override
+		public void reset() {
+			nextId = entities.nextSetBit(0);
+		}
+
+		public boolean hasNext() {
+			return nextId != -1;
+		}
+
+		public T next() {
+			if (nextId == -1)
+				throw new NoSuchElementException();
+			load(nextId, component);
+			nextId = entities.nextSetBit(nextId + 1);
+			return component;
+		}
+	}
+}
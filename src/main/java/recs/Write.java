@@ -0,0 +1,17 @@
+package recs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a ComponentMapper field of a system as changing its components. ComponentMapper fields
+ * without {@link Read} are treated as writes as well, this only documents the intent.
+ *
+ * @author Enrico van Oosten
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Write {
+}
@@ -1,41 +1,44 @@
 package recs.utils;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * ThreadPoolExecutor with a bounded queue which blocks the submitting thread while the queue is
+ * full and all threads are busy, instead of rejecting the task.
+ *
+ * Threads above the core pool size are started when the queue is full and stop after being idle
+ * for 10 seconds. Such a thread starts with the task that was just submitted, ahead of the queued
+ * tasks, so tasks only start in the order they were submitted when the core and maximum pool
+ * sizes are the same.
+ */
 public class BlockingThreadPoolExecutor extends ThreadPoolExecutor {
 	private static final int QUEUE_SIZE = 100;
+
 	/**
-	 * Secondary queue
+	 * Waits for room in the queue when the pool is saturated.
 	 */
-	private final LinkedBlockingQueue<Runnable> secondary = new LinkedBlockingQueue<Runnable>();
-
-	public BlockingThreadPoolExecutor(int corePoolSize, int maximumPoolSize) {
-		super(corePoolSize, maximumPoolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_SIZE));
-	}
-
-	@Override
-	public void execute(Runnable command) {
-		//if internal queue is empty execute immediately, else put in secondary queue.
-		if (getQueue().size() == 0) {
-			super.execute(command);
-		} else {
+	private static final RejectedExecutionHandler BLOCK = new RejectedExecutionHandler() {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown())
+				throw new RejectedExecutionException("Executor is shut down");
 			try {
-				secondary.put(command);
+				executor.getQueue().put(r);
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
 			}
 		}
+	};
+
+	public BlockingThreadPoolExecutor(int corePoolSize, int maximumPoolSize) {
+		this(corePoolSize, maximumPoolSize, QUEUE_SIZE);
 	}
 
-	@Override
-	protected void afterExecute(Runnable r, Throwable t) {
-		if (secondary.size() > 0) {
-			Runnable next = secondary.poll();
-			if (next != null) {
-				super.execute(next);
-			}
-		}
+	public BlockingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, int queueSize) {
+		super(corePoolSize, maximumPoolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), BLOCK);
 	}
 }
@@ -0,0 +1,127 @@
+package recs.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of non negative ints, like entity ids, stored packed in an array without holes. An index
+ * by value gives the position of every value in the array, so adding, removing and contains are
+ * a few array accesses and iterating is a loop over the first size items.
+ *
+ * Removing moves the last value into the hole. When sorted is set, the items are put back in
+ * ascending order by calling sort(), which only does work if the set changed since.
+ *
+ * @author Enrico van Oosten
+ */
+public final class DenseIntSet {
+	/** The values in the set, only the first size items are used */
+	public int[] items;
+	public int size;
+
+	/** For every value, its position in items plus one, or 0 if it is not in the set */
+	private int[] indices;
+	private boolean sorted = false;
+	private boolean unsorted = false;
+
+	public DenseIntSet() {
+		this(16);
+	}
+
+	public DenseIntSet(int capacity) {
+		items = new int[capacity];
+		indices = new int[capacity];
+	}
+
+	/**
+	 * Add the value, returns false if it was already in the set.
+	 */
+	public boolean add(int value) {
+		if (value < indices.length && indices[value] != 0)
+			return false;
+		if (value >= indices.length)
+			indices = Arrays.copyOf(indices, Math.max(value + 1, indices.length * 2));
+		if (size == items.length)
+			items = Arrays.copyOf(items, Math.max(8, size * 2));
+		if (size > 0 && items[size - 1] > value)
+			unsorted = true;
+		items[size] = value;
+		indices[value] = ++size;
+		return true;
+	}
+
+	/**
+	 * Remove the value, returns false if it was not in the set.
+	 */
+	public boolean remove(int value) {
+		if (value >= indices.length || indices[value] == 0)
+			return false;
+		int index = indices[value] - 1;
+		indices[value] = 0;
+		int last = items[--size];
+		if (index != size) {
+			items[index] = last;
+			indices[last] = index + 1;
+			unsorted = true;
+		}
+		return true;
+	}
+
+	public boolean contains(int value) {
+		return value < indices.length && indices[value] != 0;
+	}
+
+	/**
+	 * Make room for the given number of additional values.
+	 */
+	public void ensureCapacity(int additionalCapacity) {
+		if (size + additionalCapacity > items.length)
+			items = Arrays.copyOf(items, size + additionalCapacity);
+	}
+
+	/**
+	 * Set if sort() should put the items in ascending order.
+	 */
+	public void setSorted(boolean sorted) {
+		this.sorted = sorted;
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * Put the items in ascending order if sorted is set and the order changed since the last sort.
+	 */
+	public void sort() {
+		if (!sorted || !unsorted)
+			return;
+		Arrays.sort(items, 0, size);
+		for (int i = 0; i < size; i++)
+			indices[items[i]] = i + 1;
+		unsorted = false;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			indices[items[i]] = 0;
+		size = 0;
+		unsorted = false;
+	}
+
+	/**
+	 * Copy the values into a new array.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(items, size);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				b.append(", ");
+			b.append(items[i]);
+		}
+		return b.append(']').toString();
+	}
+}
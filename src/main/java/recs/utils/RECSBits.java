@@ -5,11 +5,14 @@ import java.util.Arrays;
 /**
  * Bit container used to efficiently specify components and systems.
  *
+ * Bits are stored in 64 bit words. Methods ending with Into write their result into a given
+ * Bits instead of allocating a new one, so they can be used on paths that should not allocate.
+ *
  * @author Enrico van Oosten
  */
 public class RECSBits {
-	private static final int WORD_MASK = 0xffffffff;
-	int[] bits = { 0 };
+	private static final long WORD_MASK = 0xffffffffffffffffL;
+	long[] bits = { 0 };
 
 	public RECSBits() {
 
@@ -27,64 +30,69 @@ public class RECSBits {
 	 * Returns if the bit at the index was set to true.
 	 */
 	public boolean get(int index) {
-		final int word = index >>> 5;
+		final int word = index >>> 6;
 		if (word >= bits.length)
 			return false;
-		return (bits[word] & (1 << (index & 31))) != 0;
+		return (bits[word] & (1L << index)) != 0;
 	}
 
 	/**
 	 * Set the bit at the index to true.
 	 */
 	public void set(int index) {
-		final int word = index >>> 5;
+		final int word = index >>> 6;
 		growWord(word);
-		bits[word] |= 1 << (index & 31);
+		bits[word] |= 1L << index;
 	}
 
 	/**
 	 * flip the bit at the given index.
 	 */
 	public void flip(int index) {
-		final int word = index >>> 5;
-		bits[word] ^= 1 << (index & 31);
+		final int word = index >>> 6;
+		growWord(word);
+		bits[word] ^= 1L << index;
 	}
 
 	/**
 	 * Set the bit at the index to false.
 	 */
 	public void clear(int index) {
-		final int word = index >>> 5;
+		final int word = index >>> 6;
 		if (word >= bits.length)
 			return;
-		bits[word] &= ~(1 << (index & 31));
+		bits[word] &= ~(1L << index);
 	}
 
 	/**
 	 * Clears the entire bitset
 	 */
 	public void clear() {
-		int length = bits.length;
-		for (int i = 0; i < length; i++) {
-			bits[i] = 0;
-		}
+		Arrays.fill(bits, 0L);
 	}
 
 	/**
 	 * Set this Bits equal to the given Bits.
 	 */
 	public void copy(RECSBits other) {
-		bits = Arrays.copyOf(other.bits, other.bits.length);
+		if (bits.length < other.bits.length)
+			bits = new long[other.bits.length];
+		System.arraycopy(other.bits, 0, bits, 0, other.bits.length);
+		Arrays.fill(bits, other.bits.length, bits.length, 0L);
 	}
 
+	/**
+	 * Bits are equal if the same bits are set, regardless of the number of words they store.
+	 */
 	@Override
 	public boolean equals(Object other) {
 		if (other == null || !(other instanceof RECSBits))
 			return false;
 		RECSBits otherBits = (RECSBits) other;
-		if (bits.length != otherBits.bits.length)
+		int count = wordCount();
+		if (count != otherBits.wordCount())
 			return false;
-		for (int i = 0; i < bits.length; i++) {
+		for (int i = 0; i < count; i++) {
 			if (bits[i] != otherBits.bits[i])
 				return false;
 		}
@@ -93,10 +101,10 @@ public class RECSBits {
 
 	@Override
 	public int hashCode() {
-		int total = Integer.MIN_VALUE;
-		for (int i = 0; i < bits.length; i++)
-			total += bits[i];
-		return total;
+		long h = 1234;
+		for (int i = wordCount(); --i >= 0;)
+			h ^= bits[i] * (i + 1);
+		return (int) ((h >> 32) ^ h);
 	}
 
 	/**
@@ -104,10 +112,18 @@ public class RECSBits {
 	 */
 	public void add(RECSBits other) {
 		int otherLength = other.bits.length;
-		if (bits.length < otherLength)
-			growWord(otherLength);
+		growWord(otherLength - 1);
 		for (int i = 0; i < otherLength; i++) {
-			bits[i] = bits[i] | other.bits[i];
+			bits[i] |= other.bits[i];
+		}
+	}
+
+	/**
+	 * Set all the true bits of the given Bits to false in this.
+	 */
+	public void remove(RECSBits other) {
+		for (int i = 0, max = Math.min(bits.length, other.bits.length); i < max; i++) {
+			bits[i] &= ~other.bits[i];
 		}
 	}
 
@@ -119,25 +135,123 @@ public class RECSBits {
 	 * @return if it contains all the true bits of this Bits.
 	 */
 	public boolean contains(RECSBits other) {
-		for (int i = 0; i < bits.length; i++) {
-			int word = bits[i];
-
-			//if any bits are set, and the other does not even have that word, return false.
-			if (word != 0 && other.bits.length - 1 < i)
+		long[] otherBits = other.bits;
+		int common = Math.min(bits.length, otherBits.length);
+		for (int i = 0; i < common; i++) {
+			long word = bits[i];
+			if ((word & otherBits[i]) != word)
 				return false;
+		}
+		//if any bits are set in words the other does not have, return false.
+		for (int i = common; i < bits.length; i++) {
+			if (bits[i] != 0)
+				return false;
+		}
+		return true;
+	}
 
-			if ((word & other.bits[i]) != word)
+	/**
+	 * Check if the other Bits has any of the bits of this Bits set.
+	 */
+	public boolean intersects(RECSBits other) {
+		for (int i = 0, max = Math.min(bits.length, other.bits.length); i < max; i++) {
+			if ((bits[i] & other.bits[i]) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if no bits are set.
+	 */
+	public boolean isEmpty() {
+		for (int i = 0; i < bits.length; i++) {
+			if (bits[i] != 0)
 				return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Get a new Bits with the bits of this Bits that are not set in the other.
+	 */
+	public RECSBits without(RECSBits other) {
+		RECSBits result = new RECSBits();
+		andNotInto(other, result);
+		return result;
+	}
+
+	/**
+	 * Set out to the bits set in both this and the other Bits.
+	 */
+	public void andInto(RECSBits other, RECSBits out) {
+		int length = Math.min(bits.length, other.bits.length);
+		long[] outBits = out.prepare(length);
+		for (int i = 0; i < length; i++)
+			outBits[i] = bits[i] & other.bits[i];
+	}
+
+	/**
+	 * Set out to the bits set in this Bits but not in the other.
+	 */
+	public void andNotInto(RECSBits other, RECSBits out) {
+		int length = bits.length;
+		int common = Math.min(length, other.bits.length);
+		long[] outBits = out.prepare(length);
+		for (int i = 0; i < common; i++)
+			outBits[i] = bits[i] & ~other.bits[i];
+		for (int i = common; i < length; i++)
+			outBits[i] = bits[i];
+	}
+
+	/**
+	 * Set out to the bits set in either this or the other Bits, but not in both.
+	 */
+	public void xorInto(RECSBits other, RECSBits out) {
+		RECSBits longer = bits.length >= other.bits.length ? this : other;
+		int common = Math.min(bits.length, other.bits.length);
+		int length = longer.bits.length;
+		long[] outBits = out.prepare(length);
+		for (int i = 0; i < common; i++)
+			outBits[i] = bits[i] ^ other.bits[i];
+		for (int i = common; i < length; i++)
+			outBits[i] = longer.bits[i];
+	}
+
+	/**
+	 * Make room for the given number of words and clear the words past it, returns the words.
+	 * Also used when out is this or the other Bits, the first length words are left as they are.
+	 */
+	private long[] prepare(int length) {
+		growWord(length - 1);
+		Arrays.fill(bits, length, bits.length, 0L);
+		return bits;
+	}
+
+	/**
+	 * Get the 64 bits starting at bit index * 64.
+	 */
+	public long getWord(int index) {
+		return index < bits.length ? bits[index] : 0L;
+	}
+
+	/**
+	 * The number of 64 bit words up to and including the word of the highest set bit.
+	 */
+	public int wordCount() {
+		for (int i = bits.length - 1; i >= 0; i--) {
+			if (bits[i] != 0)
+				return i + 1;
+		}
+		return 0;
+	}
+
 	/**
 	 * @return the number of bits currently stored, <b>not</b> the highset set
 	 *         bit!
 	 */
 	public int numBits() {
-		return bits.length << 5;
+		return bits.length << 6;
 	}
 
 	/**
@@ -150,12 +264,7 @@ public class RECSBits {
 		if (!this.contains(otherBits))
 			throw new RuntimeException("bits were not contained: " + binaryString() + ":"+ otherBits.binaryString());
 		RECSBits addedBits = new RECSBits();
-		for (int i = 0, max = otherBits.bits.length; i < max; i++) {
-			if (i > bits.length)
-				addedBits.setWord(i, otherBits.bits[i]);
-			else
-				addedBits.setWord(i, bits[i] ^ otherBits.bits[i]);
-		}
+		xorInto(otherBits, addedBits);
 		return addedBits;
 	}
 
@@ -164,16 +273,9 @@ public class RECSBits {
 	 * other.
 	 */
 	public RECSBits getRemovedBits(RECSBits otherBits) {
-		RECSBits addedBits = new RECSBits();
-		for (int i = 0, max = Math.max(otherBits.bits.length, bits.length); i < max; i++) {
-			if (i > bits.length)
-				addedBits.setWord(i, otherBits.bits[i]);
-			else if (i > otherBits.bits.length)
-				addedBits.setWord(i, bits[i]);
-			else
-				addedBits.setWord(i, bits[i] ^ otherBits.bits[i]);
-		}
-		return addedBits;
+		RECSBits removedBits = new RECSBits();
+		xorInto(otherBits, removedBits);
+		return removedBits;
 	}
 
 	/**
@@ -182,7 +284,7 @@ public class RECSBits {
 	public int cardinality() {
 		int sum = 0;
 		for (int i = 0; i < bits.length; i++) {
-			sum += Integer.bitCount(bits[i]);
+			sum += Long.bitCount(bits[i]);
 		}
 		return sum;
 	}
@@ -198,28 +300,48 @@ public class RECSBits {
 	 * //operate on index i here </br> }
 	 */
 	public int nextSetBit(int fromIndex) {
-		int wordIndex = fromIndex / 32;
+		int wordIndex = fromIndex >>> 6;
 		if (wordIndex >= bits.length)
 			return -1;
 
-		int word = bits[wordIndex] & (WORD_MASK << fromIndex);
+		long word = bits[wordIndex] & (WORD_MASK << fromIndex);
 
 		while (true) {
 			if (word != 0)
-				return Integer.numberOfTrailingZeros(word) + wordIndex * 32;
+				return Long.numberOfTrailingZeros(word) + wordIndex * 64;
 			if (++wordIndex == bits.length)
 				return -1;
 			word = bits[wordIndex];
 		}
 	}
 
+	/**
+	 * Returns the index of the first bit that is set to false that occurs on or after the
+	 * specified starting index.
+	 */
+	public int nextClearBit(int fromIndex) {
+		int wordIndex = fromIndex >>> 6;
+		if (wordIndex >= bits.length)
+			return fromIndex;
+
+		long word = ~bits[wordIndex] & (WORD_MASK << fromIndex);
+
+		while (true) {
+			if (word != 0)
+				return Long.numberOfTrailingZeros(word) + wordIndex * 64;
+			if (++wordIndex == bits.length)
+				return wordIndex * 64;
+			word = ~bits[wordIndex];
+		}
+	}
+
 	/**
 	 * Prints a binary representation of this Bits.
 	 */
 	public String binaryString() {
 		StringBuilder b = new StringBuilder();
 		for (int i = 0; i < bits.length; i++) {
-			b.append("[" + Integer.toBinaryString(bits[i]) + "],");
+			b.append("[" + Long.toBinaryString(bits[i]) + "],");
 		}
 		return b.toString();
 	}
@@ -227,24 +349,15 @@ public class RECSBits {
 	@Override
 	public String toString() {
 		StringBuilder b = new StringBuilder();
-		for (int i = 0; i < bits.length; i++) {
-			for (int j = 0; j < 32; j++) {
-				if (get(j + i * 32)) {
-					b.append((j + i * 32) + ", ");
-				}
-			}
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			b.append(i + ", ");
 		}
 		return b.toString();
 	}
 
-	private void setWord(int wordNr, int word) {
-		growWord(wordNr);
-		bits[wordNr] = word;
-	}
-
-	private void growWord(int wordCount) {
-		if (wordCount >= bits.length) {
-			int[] newBits = new int[wordCount + 1];
+	private void growWord(int wordNr) {
+		if (wordNr >= bits.length) {
+			long[] newBits = new long[wordNr + 1];
 			System.arraycopy(bits, 0, newBits, 0, bits.length);
 			bits = newBits;
 		}
@@ -0,0 +1,143 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Health0;
+import recs.components.Position0;
+import recs.entities.TestZombie;
+
+public class CommandBufferTest {
+	private EntityWorld world;
+	private PositionCountSystem countSystem;
+
+	/** Removes every entity left of x = 0 and gives a spawned zombie an attack to every other one */
+	private static class CleanupSystem extends EntitySystem {
+		private ComponentMapper<Position0> positionMapper;
+
+		@SuppressWarnings("unchecked")
+		public CleanupSystem() {
+			super(Position0.class);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			CommandBuffer commands = world.getCommandBuffer();
+			if (positionMapper.get(id).x < 0) {
+				commands.removeEntity(id);
+				//Removing twice is harmless.
+				commands.removeEntity(id);
+			} else {
+				commands.addComponent(id, new Attack0(1));
+				commands.addEntity(new TestZombie(0, 0));
+			}
+		}
+	}
+
+	/** Counts the entities it sees, which should include the changes of the previous system */
+	private static class PositionCountSystem extends EntitySystem {
+		int counted;
+
+		@SuppressWarnings("unchecked")
+		public PositionCountSystem() {
+			super(Position0.class, Attack0.class);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			counted++;
+		}
+	}
+
+	@Before
+	public void setup() {
+		world = new EntityWorld();
+		world.addSystem(new CleanupSystem());
+		countSystem = new PositionCountSystem();
+		world.addSystem(countSystem);
+	}
+
+	@Test
+	public void testPlaybackBetweenSystems() {
+		int[] ids = new int[100];
+		TestZombie[] zombies = new TestZombie[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(zombies[i] = new TestZombie(i % 2 == 0 ? -1 : 1, 0));
+
+		world.process(1f);
+		assertEquals(0, world.getCommandBuffer().size());
+		assertEquals(ids.length / 2, countSystem.counted);
+		for (int i = 0; i < ids.length; i++) {
+			//The ids of removed entities are reused by the added zombies.
+			if (i % 2 == 0) {
+				assertNotSame(zombies[i], world.getEntity(ids[i]));
+			} else {
+				assertNotNull(world.getComponent(ids[i], Attack0.class));
+			}
+		}
+		assertEquals(ids.length, world.getComponentMapper(Position0.class).size());
+	}
+
+	@Test
+	public void testPlaybackAtEndOfProcess() {
+		TestZombie zombie = new TestZombie(-1, 1);
+		int id = world.addEntity(zombie);
+		world.getCommandBuffer().addComponent(id, new Health0(1, 1));
+		world.getCommandBuffer().removeEntity(id);
+		world.getCommandBuffer().addComponent(id, new Attack0(1));
+		assertEquals(3, world.getCommandBuffer().size());
+
+		world.process(1f);
+		assertNull(world.getEntity(id));
+		assertNull(world.getComponent(id, Attack0.class));
+	}
+
+	@Test
+	public void testCommandsSkipReusedIds() {
+		int id = world.addEntity(new TestZombie(1, 0));
+		CommandBuffer commands = world.getCommandBuffer();
+		commands.removeEntity(id);
+		TestZombie fresh = new TestZombie(1, 0);
+		commands.addEntity(fresh);
+		commands.addComponent(id, new Attack0(7));
+		world.playbackCommands();
+
+		//The new zombie reuses the id, but does not get the attack meant for the removed one.
+		assertEquals(id, fresh.getId());
+		assertSame(fresh, world.getEntity(id));
+		assertNull(world.getComponent(id, Attack0.class));
+	}
+
+	@Test
+	public void testRecordHandlesFromAnotherThread() throws InterruptedException {
+		final int id = world.addEntity(new TestZombie(1, 0));
+		int removedId = world.addEntity(new TestZombie(1, 0));
+		final long handle = world.getEntityHandle(id);
+		final long removedHandle = world.getEntityHandle(removedId);
+		world.removeEntity(removedId);
+
+		final CommandBuffer commands = world.getCommandBuffer();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				commands.addComponent(handle, new Attack0(3));
+				commands.addComponent(removedHandle, new Health0(1, 1));
+				commands.removeEntity(removedHandle);
+			}
+		};
+		thread.start();
+		thread.join();
+		assertEquals(3, commands.size());
+		world.playbackCommands();
+
+		assertEquals(3, world.getComponent(id, Attack0.class).attack);
+		assertNotNull(world.getEntity(id));
+	}
+}
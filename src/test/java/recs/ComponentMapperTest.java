@@ -0,0 +1,238 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Position0;
+import recs.components.Velocity0;
+import recs.entities.TestPlayer;
+import recs.systems.TestMovementSystem;
+
+import com.badlogic.gdx.utils.IntArray;
+
+public class ComponentMapperTest {
+
+	private void testStorage(ComponentStorage storage) {
+		EntityWorld world = new EntityWorld(storage);
+		ComponentMapper<Position0> mapper = world.getComponentMapper(Position0.class);
+
+		int[] ids = new int[100];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestPlayer(i, i));
+		assertEquals(ids.length, mapper.size());
+
+		for (int i = 0; i < ids.length; i++)
+			assertEquals(i, mapper.get(ids[i]).x, 0f);
+
+		for (int i = 0; i < ids.length; i += 2)
+			world.removeEntity(ids[i]);
+		assertEquals(ids.length / 2, mapper.size());
+		assertNull(mapper.get(ids[0]));
+		assertNull(mapper.get(Integer.MAX_VALUE / 2));
+
+		IntArray iteratedIds = mapper.getIds().toArray();
+		assertEquals(ids.length / 2, iteratedIds.size);
+		for (int i = 1; i < ids.length; i += 2)
+			assertTrue(iteratedIds.contains(ids[i]));
+
+		int numComponents = 0;
+		for (Position0 position : mapper.getComponents()) {
+			assertSame(position, mapper.get(ids[(int) position.x]));
+			numComponents++;
+		}
+		assertEquals(ids.length / 2, numComponents);
+	}
+
+	@Test
+	public void testHashedStorage() {
+		testStorage(ComponentStorage.HASHED);
+	}
+
+	@Test
+	public void testDenseStorage() {
+		testStorage(ComponentStorage.DENSE);
+	}
+
+	@Test
+	public void testSparseSetStorage() {
+		testStorage(ComponentStorage.SPARSE_SET);
+	}
+
+	private static class SparseMovementSystem extends EntitySystem {
+		private SparseComponentMapper<Position0> positionMapper;
+		private ComponentMapper<Velocity0> velocityMapper;
+
+		@SuppressWarnings("unchecked")
+		public SparseMovementSystem() {
+			super(Position0.class, Velocity0.class);
+		}
+
+		@Override
+		protected void processSystem(float deltaInSec) {
+			int[] ids = positionMapper.getDenseIds();
+			Position0[] positions = positionMapper.getDenseComponents();
+			for (int i = 0, size = positionMapper.size(); i < size; i++) {
+				Velocity0 velocity = velocityMapper.get(ids[i]);
+				positions[i].x += velocity.x * deltaInSec;
+				positions[i].y += velocity.y * deltaInSec;
+			}
+		}
+	}
+
+	@Test
+	public void testSparseSetIteration() {
+		EntityWorld world = new EntityWorld(ComponentStorage.SPARSE_SET);
+		world.addSystem(new SparseMovementSystem());
+
+		int[] ids = new int[50];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestPlayer(i, 0));
+		for (int i = 0; i < ids.length; i += 3)
+			world.removeEntity(ids[i]);
+
+		world.process(2f);
+		for (int i = 0; i < ids.length; i++) {
+			Position0 position = world.getComponent(ids[i], Position0.class);
+			if (i % 3 == 0) {
+				assertNull(position);
+			} else {
+				assertEquals(i + 4f, position.x, 0f);
+				assertEquals(2f, position.y, 0f);
+			}
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testWrongMapperType() {
+		EntityWorld world = new EntityWorld(ComponentStorage.DENSE);
+		world.addSystem(new SparseMovementSystem());
+	}
+
+	private static class ColumnarMovementSystem extends EntitySystem {
+		private ColumnarComponentMapper<Position0> positionMapper;
+		private ColumnarComponentMapper<Velocity0> velocityMapper;
+
+		@SuppressWarnings("unchecked")
+		public ColumnarMovementSystem() {
+			super(Position0.class, Velocity0.class);
+		}
+
+		@Override
+		protected void processSystem(float deltaInSec) {
+			float[] x = positionMapper.getFloats("x");
+			float[] y = positionMapper.getFloats("y");
+			float[] vx = velocityMapper.getFloats("x");
+			float[] vy = velocityMapper.getFloats("y");
+			int[] ids = getAllEntities().toArray();
+			for (int id : ids) {
+				x[id] += vx[id] * deltaInSec;
+				y[id] += vy[id] * deltaInSec;
+			}
+		}
+	}
+
+	@Test
+	public void testColumnarStorage() {
+		EntityWorld world = new EntityWorld();
+		world.setComponentStorage(Position0.class, ComponentStorage.COLUMNAR);
+		world.setComponentStorage(Velocity0.class, ComponentStorage.COLUMNAR);
+		world.addSystem(new ColumnarMovementSystem());
+
+		int[] ids = new int[40];
+		for (int i = 0; i < ids.length; i++) {
+			Entity e = new Entity();
+			e.addComponent(new Position0(i, 1), new Velocity0(1, 2));
+			ids[i] = world.addEntity(e);
+		}
+		world.process(1f);
+
+		ColumnarComponentMapper<Position0> mapper = (ColumnarComponentMapper<Position0>) world.getComponentMapper(Position0.class);
+		assertEquals(ids.length, mapper.size());
+		for (int i = 0; i < ids.length; i++) {
+			Position0 position = mapper.get(ids[i]);
+			assertEquals(i + 1f, position.x, 0f);
+			assertEquals(3f, position.y, 0f);
+		}
+
+		Position0 position = new Position0(-1, -2);
+		mapper.set(ids[0], position);
+		assertEquals(-2f, world.getComponent(ids[0], Position0.class).y, 0f);
+
+		world.removeEntity(ids[0]);
+		assertNull(mapper.get(ids[0]));
+		assertEquals(ids.length - 1, mapper.size());
+	}
+
+	@Test
+	public void testOffHeapStorage() {
+		EntityWorld world = new EntityWorld();
+		world.setComponentStorage(Velocity0.class, ComponentStorage.OFF_HEAP);
+		world.addSystem(new TestMovementSystem());
+		OffHeapComponentMapper<Velocity0> mapper = (OffHeapComponentMapper<Velocity0>) world.getComponentMapper(Velocity0.class);
+
+		int[] ids = new int[100];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestPlayer(0, 0));
+		assertEquals(ids.length, mapper.size());
+
+		int x = mapper.getFieldOffset("x");
+		for (int i = 0; i < ids.length; i++)
+			mapper.putFloat(ids[i], x, i);
+
+		world.process(1f);
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i, world.getComponent(ids[i], Position0.class).x, 0f);
+			assertEquals(1f, world.getComponent(ids[i], Position0.class).y, 0f);
+		}
+
+		ByteBuffer buffer = mapper.getBuffer();
+		assertEquals(ids.length - 1, buffer.getFloat(ids[ids.length - 1] * mapper.getStride() + x), 0f);
+
+		world.removeEntity(ids[3]);
+		assertNull(mapper.get(ids[3]));
+		assertEquals(ids.length - 1, mapper.getIds().toArray().size);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testColumnarRequiresDefaultConstructor() {
+		new EntityWorld().setComponentStorage(Attack0.class, ComponentStorage.COLUMNAR);
+	}
+
+	@Test
+	public void testMixedStorage() {
+		EntityWorld world = new EntityWorld(ComponentStorage.DENSE);
+		world.setComponentStorage(Attack0.class, ComponentStorage.HASHED);
+		TestMovementSystem movementSystem = new TestMovementSystem();
+		world.addSystem(movementSystem);
+
+		Entity e = new Entity();
+		e.addComponent(new Position0(1, 2), new Velocity0(1, 1), new Attack0(3));
+		int id = world.addEntity(e);
+
+		world.process(1f);
+		assertEquals(2f, world.getComponent(id, Position0.class).x, 0f);
+		assertEquals(3, world.getComponent(id, Attack0.class).attack);
+	}
+
+	@Test
+	public void testStorageAfterRegistration() {
+		EntityWorld world = new EntityWorld();
+		world.addSystem(new TestMovementSystem());
+		boolean threw = false;
+		try {
+			world.setComponentStorage(Position0.class, ComponentStorage.DENSE);
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+		assertTrue(threw);
+		assertFalse(world.getComponentMapper(Position0.class) instanceof DenseComponentMapper);
+	}
+}
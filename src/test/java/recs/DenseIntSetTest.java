@@ -0,0 +1,106 @@
+package recs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import recs.components.Health0;
+import recs.components.Position0;
+import recs.utils.DenseIntSet;
+
+import com.badlogic.gdx.utils.IntArray;
+
+public class DenseIntSetTest {
+
+	@Test
+	public void testAddRemove() {
+		DenseIntSet set = new DenseIntSet(2);
+		assertTrue(set.add(5));
+		assertTrue(set.add(100));
+		assertTrue(set.add(0));
+		assertFalse(set.add(5));
+		assertEquals(3, set.size);
+		assertTrue(set.contains(100));
+		assertFalse(set.contains(1000));
+
+		//The last value fills the hole.
+		assertTrue(set.remove(5));
+		assertFalse(set.remove(5));
+		assertFalse(set.contains(5));
+		assertArrayEquals(new int[] { 0, 100 }, set.toArray());
+		assertTrue(set.remove(0));
+		assertTrue(set.remove(100));
+		assertEquals(0, set.size);
+
+		set.add(3);
+		set.clear();
+		assertFalse(set.contains(3));
+		assertTrue(set.add(3));
+	}
+
+	@Test
+	public void testSort() {
+		DenseIntSet set = new DenseIntSet();
+		for (int i = 20; i > 0; i--)
+			set.add(i);
+		set.sort();
+		assertEquals(20, set.items[0]);
+
+		set.setSorted(true);
+		set.remove(7);
+		set.sort();
+		for (int i = 1; i < set.size; i++)
+			assertTrue(set.items[i - 1] < set.items[i]);
+		//The index follows the sorted items.
+		assertTrue(set.remove(1));
+		assertTrue(set.contains(20));
+		assertEquals(18, set.size);
+	}
+
+	/** Removes every third entity while processing */
+	private static class RemovingSystem extends EntitySystem {
+		private final IntArray processed = new IntArray();
+
+		@SuppressWarnings("unchecked")
+		public RemovingSystem() {
+			super(Position0.class);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			processed.add(id);
+			if (id % 3 == 0)
+				world.removeEntity(id);
+		}
+	}
+
+	@Test
+	public void testRemoveWhileProcessing() {
+		EntityWorld world = new EntityWorld();
+		RemovingSystem system = new RemovingSystem();
+		system.setSortEntities(true);
+		world.addSystem(system);
+		for (int i = 0; i < 100; i++) {
+			Entity e = new Entity();
+			e.addComponent(new Position0());
+			if (i % 2 == 0)
+				e.addComponent(new Health0(1, 1));
+			world.addEntity(e);
+		}
+		int count = system.getAllEntities().size;
+		world.process(1f);
+		//Every entity is processed once, also the ones moved into the place of a removed one.
+		assertEquals(count, system.processed.size);
+		int[] processed = system.processed.toArray();
+		Arrays.sort(processed);
+		for (int i = 1; i < processed.length; i++)
+			assertTrue(processed[i - 1] < processed[i]);
+		for (int i = 0; i < system.getAllEntities().size; i++)
+			assertTrue(system.getAllEntities().items[i] % 3 != 0);
+	}
+}
@@ -0,0 +1,286 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Position0;
+import recs.components.Velocity0;
+import recs.entities.TestPlayer;
+import recs.entities.TestZombie;
+import recs.utils.RECSBits;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntSet;
+
+public class EntityFamilyTest {
+	private EntityWorld world;
+	private ChunkMovementSystem system;
+
+	private static class ChunkMovementSystem extends EntitySystem {
+		private ComponentMapper<Position0> positionMapper;
+		private ComponentMapper<Velocity0> velocityMapper;
+
+		@SuppressWarnings("unchecked")
+		public ChunkMovementSystem() {
+			super(Position0.class, Velocity0.class);
+		}
+
+		@Override
+		protected void processSystem(float deltaInSec) {
+			Array<EntityFamily> families = getFamilies();
+			for (int i = 0; i < families.size; i++) {
+				EntityFamily family = families.get(i);
+				for (int j = 0; j < family.getChunkCount(); j++) {
+					EntityChunk chunk = family.getChunk(j);
+					Component[] positions = chunk.getColumn(positionMapper);
+					Component[] velocities = chunk.getColumn(velocityMapper);
+					for (int k = 0; k < chunk.size(); k++) {
+						Position0 position = (Position0) positions[k];
+						Velocity0 velocity = (Velocity0) velocities[k];
+						position.x += velocity.x * deltaInSec;
+						position.y += velocity.y * deltaInSec;
+					}
+				}
+			}
+		}
+	}
+
+	@Before
+	public void setup() {
+		world = new EntityWorld();
+		world.setArchetypeStorage(true);
+		system = new ChunkMovementSystem();
+		world.addSystem(system);
+	}
+
+	/** Count the entities in the chunks of the system, checking every entity is in the right slot */
+	private IntSet collectIds() {
+		IntSet ids = new IntSet();
+		Array<EntityFamily> families = system.getFamilies();
+		for (int i = 0; i < families.size; i++) {
+			EntityFamily family = families.get(i);
+			int total = 0;
+			for (int j = 0; j < family.getChunkCount(); j++) {
+				EntityChunk chunk = family.getChunk(j);
+				for (int k = 0; k < chunk.size(); k++) {
+					assertEquals(chunk.getEntity(k).getId(), chunk.getIds()[k]);
+					assertSame(family, chunk.getEntity(k).family);
+					assertTrue(ids.add(chunk.getIds()[k]));
+				}
+				total += chunk.size();
+			}
+			assertEquals(family.size(), total);
+		}
+		return ids;
+	}
+
+	@Test
+	public void testChunkIteration() {
+		int[] ids = new int[EntityChunk.CAPACITY * 3 + 5];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(i % 2 == 0 ? new TestPlayer(i, 0) : new TestZombie(i, 0));
+		assertEquals(2, system.getFamilies().size);
+		assertEquals(ids.length, collectIds().size);
+
+		world.process(1f);
+		for (int i = 0; i < ids.length; i++) {
+			Position0 position = world.getComponent(ids[i], Position0.class);
+			assertEquals(i + (i % 2 == 0 ? 2f : 1f), position.x, 0f);
+		}
+	}
+
+	@Test
+	public void testRemoveMovesEntities() {
+		int[] ids = new int[EntityChunk.CAPACITY * 2];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestPlayer(i, 0));
+		for (int i = 0; i < ids.length; i += 3)
+			world.removeEntity(ids[i]);
+
+		IntSet chunkIds = collectIds();
+		for (int i = 0; i < ids.length; i++)
+			assertEquals(i % 3 != 0, chunkIds.contains(ids[i]));
+
+		for (int i = 0; i < ids.length; i++) {
+			if (i % 3 != 0)
+				world.removeEntity(ids[i]);
+		}
+		assertEquals(0, collectIds().size);
+	}
+
+	@Test
+	public void testComponentChangesMoveEntities() {
+		TestPlayer player = new TestPlayer(0, 0);
+		Entity entity = player;
+		int id = world.addEntity(player);
+		EntityFamily oldFamily = entity.family;
+
+		player.addComponent(new Attack0(1));
+		assertEquals(0, oldFamily.size());
+		assertEquals(1, entity.family.size());
+		assertTrue(collectIds().contains(id));
+
+		Position0 position = new Position0(5, 5);
+		player.addComponent(position);
+		assertSame(position, entity.family.getChunk(0).getColumn(world.getComponentMapper(Position0.class))[0]);
+
+		player.removeComponent(player.velocity);
+		assertEquals(0, collectIds().size);
+		assertNull(entity.family.getChunk(0).getColumn(world.getComponentMapper(Velocity0.class)));
+	}
+
+	@Test
+	public void testFamilyTransitions() {
+		TestPlayer player = new TestPlayer(0, 0);
+		Entity entity = player;
+		world.addEntity(player);
+		EntityFamily family = entity.family;
+
+		Attack0 attack = new Attack0(1);
+		player.addComponent(attack);
+		EntityFamily attackFamily = entity.family;
+		assertSame(attackFamily, family.getAddTransition(world.getComponentId(Attack0.class)));
+		assertSame(family, attackFamily.getRemoveTransition(world.getComponentId(Attack0.class)));
+
+		for (int i = 0; i < 10; i++) {
+			player.removeComponent(attack);
+			assertSame(family, entity.family);
+			player.addComponent(attack);
+			assertSame(attackFamily, entity.family);
+		}
+		assertEquals(1, attackFamily.size());
+		assertEquals(0, family.size());
+	}
+
+	@Test
+	public void testAddSystemToFamilies() {
+		world.removeSystem(system);
+		int[] ids = new int[EntityChunk.CAPACITY * 2 + 1];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(i % 2 == 0 ? new TestPlayer(i, 0) : new TestZombie(i, 0));
+		Entity empty = new Entity();
+		world.addEntity(empty);
+		world.removeEntity(empty.getId());
+
+		system = new ChunkMovementSystem();
+		world.addSystem(system);
+		assertEquals(ids.length, system.getAllEntities().size);
+		assertEquals(ids.length, collectIds().size);
+
+		//Entities added to a family which had no entities when the system was added.
+		Entity e = new Entity();
+		e.addComponent(new Position0(0, 0), new Velocity0(0, 0));
+		assertTrue(system.hasEntity(world.addEntity(e)));
+
+		world.removeSystem(system);
+		assertEquals(0, system.getAllEntities().size);
+		world.addSystem(system);
+		assertEquals(ids.length + 1, system.getAllEntities().size);
+	}
+
+	@Test
+	public void testRemoveSystemRemovesEntities() {
+		final IntSet removed = new IntSet();
+		EntitySystem tracking = new ChunkMovementSystem() {
+			@Override
+			protected void removeEntity(int id) {
+				removed.add(id);
+				super.removeEntity(id);
+			}
+		};
+		world.addSystem(tracking);
+		int[] ids = new int[10];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestZombie(i, 0));
+
+		//Removing the system calls removeEntity for every entity, like adding it called addEntity.
+		world.removeSystem(tracking);
+		assertEquals(ids.length, removed.size);
+		for (int id : ids)
+			assertTrue(removed.contains(id));
+		assertEquals(0, tracking.getAllEntities().size);
+	}
+
+	@Test
+	public void testFamilyInterning() {
+		RECSBits bits = new RECSBits();
+		bits.set(world.getComponentId(Position0.class));
+		EntityFamily family = world.getEntityFamily(bits);
+
+		//Trailing empty words do not make a different family.
+		RECSBits longerBits = new RECSBits();
+		longerBits.set(200);
+		longerBits.clear(200);
+		longerBits.set(world.getComponentId(Position0.class));
+		assertSame(family, world.getEntityFamily(longerBits));
+
+		//Changing the bits used to create the family does not change the family.
+		bits.set(world.getComponentId(Velocity0.class));
+		assertTrue(family.key.matches(longerBits));
+		assertSame(family, world.getEntityFamily(longerBits));
+
+		//Families stay retrievable as the table grows.
+		EntityFamily[] families = new EntityFamily[100];
+		for (int i = 0; i < families.length; i++) {
+			RECSBits familyBits = new RECSBits();
+			familyBits.set(i + 1);
+			familyBits.set(i * 7 + 3);
+			families[i] = world.getEntityFamily(familyBits);
+		}
+		for (int i = 0; i < families.length; i++) {
+			RECSBits familyBits = new RECSBits();
+			familyBits.set(i * 7 + 3);
+			familyBits.set(i + 1);
+			assertSame(families[i], world.getEntityFamily(familyBits));
+		}
+	}
+
+	@Test
+	public void testRemoveEntities() {
+		int[] ids = new int[EntityChunk.CAPACITY * 3];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(i % 2 == 0 ? new TestPlayer(i, 0) : new TestZombie(i, 0));
+
+		int[] removed = new int[ids.length];
+		int count = 0;
+		for (int i = 0; i < ids.length; i += 3)
+			removed[count++] = ids[i];
+		world.removeEntities(removed, count);
+
+		IntSet chunkIds = collectIds();
+		assertEquals(ids.length - count, chunkIds.size);
+		assertEquals(ids.length - count, system.getAllEntities().size);
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i % 3 != 0, chunkIds.contains(ids[i]));
+			assertEquals(i % 3 != 0, world.getEntity(ids[i]) != null);
+			assertEquals(i % 3 != 0, world.getComponent(ids[i], Position0.class) != null);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRemoveArchetype() {
+		EntityArchetype archetype = world.getArchetype(Position0.class, Velocity0.class);
+		world.createEntities(archetype, EntityChunk.CAPACITY + 10);
+		int playerId = world.addEntity(new TestPlayer(0, 0));
+
+		assertEquals(EntityChunk.CAPACITY + 10, world.removeEntities(archetype));
+		IntSet chunkIds = collectIds();
+		assertEquals(1, chunkIds.size);
+		assertTrue(chunkIds.contains(playerId));
+		assertEquals(1, world.getComponentMapper(Velocity0.class).size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testArchetypeStorageAfterAdd() {
+		EntityWorld world = new EntityWorld();
+		world.addEntity(new TestPlayer(0, 0));
+		world.setArchetypeStorage(false);
+	}
+}
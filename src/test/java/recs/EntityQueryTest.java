@@ -0,0 +1,181 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Health0;
+import recs.components.Position0;
+import recs.components.Velocity0;
+import recs.entities.TestPlayer;
+import recs.entities.TestZombie;
+import recs.utils.RECSBits;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+public class EntityQueryTest {
+	private EntityWorld world;
+	private TestPlayer player;
+	private TestZombie zombie;
+
+	/** Processes moving entities which are not attacking */
+	private static class PassiveMovementSystem extends EntitySystem {
+		@SuppressWarnings("unchecked")
+		public PassiveMovementSystem() {
+			super(Position0.class, Velocity0.class);
+			exclude(Attack0.class);
+		}
+	}
+
+	/** Processes positioned entities which either have health or can attack */
+	private static class TargetSystem extends EntitySystem {
+		@SuppressWarnings("unchecked")
+		public TargetSystem() {
+			super(Position0.class);
+			requireAny(Health0.class, Attack0.class);
+		}
+	}
+
+	@Before
+	public void setup() {
+		world = new EntityWorld();
+		player = new TestPlayer(0, 0);
+		zombie = new TestZombie(0, 0);
+		world.addEntity(player);
+		world.addEntity(zombie);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testQuery() {
+		EntityQuery moving = world.query().all(Position0.class, Velocity0.class);
+		EntityQuery withHealth = world.query().all(Position0.class).any(Health0.class, Attack0.class);
+		EntityQuery withoutHealth = world.query().all(Position0.class).none(Health0.class);
+
+		assertEquals(2, moving.size());
+		assertEquals(1, withHealth.size());
+		assertTrue(withHealth.matches(player));
+		assertFalse(withHealth.matches(zombie));
+		assertEquals(1, withoutHealth.size());
+		assertEquals(zombie.getId(), withoutHealth.getIds(new IntArray()).first());
+
+		//The results follow the entities as they change family.
+		zombie.addComponent(new Attack0(1));
+		assertEquals(2, withHealth.size());
+		zombie.addComponent(new Health0(1, 1));
+		assertEquals(0, withoutHealth.size());
+		world.removeEntity(player.getId());
+		assertEquals(1, moving.size());
+		assertEquals(1, withHealth.size());
+	}
+
+	@Test
+	public void testSystemFilters() {
+		PassiveMovementSystem passive = new PassiveMovementSystem();
+		TargetSystem targets = new TargetSystem();
+		world.addSystem(passive, targets);
+		assertEquals(2, passive.getAllEntities().size);
+		assertEquals(1, targets.getAllEntities().size);
+
+		Attack0 attack = new Attack0(1);
+		zombie.addComponent(attack);
+		assertFalse(passive.hasEntity(zombie.getId()));
+		assertTrue(targets.hasEntity(zombie.getId()));
+		assertEquals(2, passive.getFamilies().size);
+
+		zombie.removeComponent(attack);
+		assertTrue(passive.hasEntity(zombie.getId()));
+		assertFalse(targets.hasEntity(zombie.getId()));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWideFamilies() {
+		int position = world.getComponentId(Position0.class);
+		int velocity = world.getComponentId(Velocity0.class);
+		RECSBits narrowBits = new RECSBits();
+		narrowBits.set(position);
+		narrowBits.set(velocity);
+		RECSBits wideBits = new RECSBits(narrowBits);
+		wideBits.set(100);
+		EntityFamily narrow = world.getEntityFamily(narrowBits);
+		EntityFamily wide = world.getEntityFamily(wideBits);
+		assertTrue(narrow.singleWord);
+		assertFalse(wide.singleWord);
+
+		EntityQuery moving = world.query().all(Position0.class, Velocity0.class);
+		assertTrue(moving.matches(narrow));
+		assertTrue(moving.matches(wide));
+
+		//Filters with component ids past the first word.
+		RECSBits highBits = new RECSBits();
+		highBits.set(100);
+		EntityQuery high = world.query().all(Position0.class);
+		high.allBits.add(highBits);
+		high.all(Velocity0.class);
+		assertFalse(high.matches(narrow));
+		assertTrue(high.matches(wide));
+		assertFalse(world.query().all(Position0.class).none(Velocity0.class).matches(wide));
+		EntityQuery anyHigh = world.query().all(Position0.class);
+		anyHigh.anyBits.add(highBits);
+		anyHigh.all(Velocity0.class);
+		assertFalse(anyHigh.matches(narrow));
+		assertTrue(anyHigh.matches(wide));
+	}
+
+	/** A system with filters set from outside, used to check the system index */
+	private static class FilterSystem extends EntitySystem {
+		public FilterSystem(Class<? extends Component>[] all, Class<? extends Component>[] any, Class<? extends Component>[] none) {
+			super(all);
+			if (any.length != 0)
+				requireAny(any);
+			if (none.length != 0)
+				exclude(none);
+		}
+	}
+
+	@Test
+	public void testSystemIndex() {
+		Array<Class<? extends Component>> componentList = new Array<Class<? extends Component>>(Class.class);
+		componentList.add(Position0.class);
+		componentList.add(Velocity0.class);
+		componentList.add(Health0.class);
+		componentList.add(Attack0.class);
+		Class<? extends Component>[] components = componentList.toArray();
+		Array<FilterSystem> systems = new Array<FilterSystem>();
+		//Every combination of components in the all, any and none filter of a system.
+		for (int i = 0; i < 27; i++) {
+			Array<Class<? extends Component>> all = new Array<Class<? extends Component>>(Class.class);
+			Array<Class<? extends Component>> any = new Array<Class<? extends Component>>(Class.class);
+			Array<Class<? extends Component>> none = new Array<Class<? extends Component>>(Class.class);
+			for (int j = 0, filter = i; j < 3; j++, filter /= 3)
+				(filter % 3 == 0 ? all : filter % 3 == 1 ? any : none).add(components[j]);
+			if (i % 2 == 0)
+				none.add(Attack0.class);
+			FilterSystem system = new FilterSystem(all.toArray(), any.toArray(), none.toArray());
+			systems.add(system);
+			world.addSystem(system);
+		}
+		world.removeSystem(systems.removeIndex(5));
+
+		Entity[] entities = new Entity[16];
+		for (int i = 0; i < entities.length; i++) {
+			entities[i] = new Entity();
+			for (int j = 0; j < components.length; j++) {
+				if ((i & (1 << j)) != 0)
+					entities[i].addComponent(j == 0 ? new Position0() : j == 1 ? new Velocity0() : j == 2 ? new Health0(1, 1) : new Attack0(1));
+			}
+		}
+		world.addEntities(entities);
+
+		for (FilterSystem system : systems) {
+			for (Entity e : entities)
+				assertEquals(system.query.matches(e), system.hasEntity(e.getId()));
+		}
+	}
+}
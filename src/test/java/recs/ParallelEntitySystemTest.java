@@ -0,0 +1,135 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Position0;
+import recs.components.Velocity0;
+import recs.entities.TestZombie;
+
+public class ParallelEntitySystemTest {
+	private EntityWorld world;
+
+	private static class ParallelMovementSystem extends ParallelEntitySystem {
+		private ComponentMapper<Position0> positionMapper;
+		private ComponentMapper<Velocity0> velocityMapper;
+		final AtomicInteger processed = new AtomicInteger();
+
+		@SuppressWarnings("unchecked")
+		public ParallelMovementSystem() {
+			super(Position0.class, Velocity0.class);
+			setMinBatchSize(16);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			Position0 position = positionMapper.get(id);
+			Velocity0 velocity = velocityMapper.get(id);
+			position.x += velocity.x * deltaSec;
+			position.y += velocity.y * deltaSec;
+			processed.incrementAndGet();
+			if (position.x > 1000)
+				world.getCommandBuffer().addComponent(id, new Attack0(1));
+		}
+	}
+
+	private static class FailingSystem extends ParallelEntitySystem {
+		@SuppressWarnings("unchecked")
+		public FailingSystem() {
+			super(Position0.class);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			if (id % 100 == 0)
+				throw new IllegalStateException("failed " + id);
+		}
+	}
+
+	/** Checks the values of a component stored as columns, read by several threads at once */
+	private static class ParallelReaderSystem extends ParallelEntitySystem {
+		@Read
+		private ComponentMapper<Position0> positionMapper;
+		final AtomicInteger wrong = new AtomicInteger();
+
+		@SuppressWarnings("unchecked")
+		public ParallelReaderSystem() {
+			super(Position0.class);
+			setMinBatchSize(1);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			Position0 position = positionMapper.get(id);
+			if (position.y != position.x * 2)
+				wrong.incrementAndGet();
+		}
+	}
+
+	@Before
+	public void setup() {
+		world = new EntityWorld();
+	}
+
+	@Test
+	public void testParallelProcessing() {
+		ParallelMovementSystem system = new ParallelMovementSystem();
+		world.addSystem(system);
+		int[] ids = new int[5000];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = world.addEntity(new TestZombie(i, 0));
+
+		world.process(1f);
+		world.process(1f);
+		assertEquals(ids.length * 2, system.processed.get());
+		for (int i = 0; i < ids.length; i++) {
+			Position0 position = world.getComponent(ids[i], Position0.class);
+			assertEquals(i + 2f, position.x, 0f);
+			assertEquals(4f, position.y, 0f);
+			assertEquals(i + 2f > 1000, world.getComponent(ids[i], Attack0.class) != null);
+		}
+	}
+
+	@Test
+	public void testExceptionsReachTheWorld() {
+		world.addSystem(new FailingSystem());
+		for (int i = 0; i < 1000; i++)
+			world.addEntity(new TestZombie(0, 0));
+		boolean threw = false;
+		try {
+			world.process(1f);
+		} catch (RuntimeException e) {
+			threw = e.getCause() instanceof IllegalStateException;
+		}
+		assertTrue(threw);
+	}
+
+	@Test
+	public void testReadValuesOnSeveralThreads() {
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		world.setWorkerExecutor(workers, 4);
+		world.setComponentStorage(Position0.class, ComponentStorage.COLUMNAR);
+		ParallelReaderSystem system = new ParallelReaderSystem();
+		world.addSystem(system);
+		for (int i = 0; i < 2000; i++) {
+			Entity e = new Entity();
+			e.addComponent(new Position0(i, i * 2));
+			world.addEntity(e);
+		}
+		try {
+			for (int i = 0; i < 10; i++)
+				world.process(1f);
+		} finally {
+			workers.shutdown();
+		}
+		assertEquals(0, system.wrong.get());
+	}
+}
@@ -0,0 +1,71 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import recs.utils.RECSBits;
+
+public class RECSBitsTest {
+
+	private static RECSBits bits(int... indices) {
+		RECSBits bits = new RECSBits();
+		for (int i : indices)
+			bits.set(i);
+		return bits;
+	}
+
+	@Test
+	public void testWords() {
+		RECSBits bits = bits(0, 63, 64, 200);
+		assertTrue(bits.get(63));
+		assertTrue(bits.get(64));
+		assertFalse(bits.get(65));
+		assertEquals(4, bits.cardinality());
+		assertEquals(1L | 1L << 63, bits.getWord(0));
+		assertEquals(4, bits.wordCount());
+
+		int[] expected = { 0, 63, 64, 200 };
+		int idx = 0;
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+			assertEquals(expected[idx++], i);
+		assertEquals(expected.length, idx);
+		assertEquals(1, bits.nextClearBit(0));
+		assertEquals(65, bits.nextClearBit(63));
+
+		bits.clear(200);
+		assertEquals(bits(0, 63, 64), bits);
+		assertEquals(bits(0, 63, 64).hashCode(), bits.hashCode());
+	}
+
+	@Test
+	public void testContains() {
+		assertTrue(bits(1, 70).contains(bits(1, 5, 70)));
+		assertFalse(bits(1, 70).contains(bits(1, 5)));
+		assertTrue(bits(1).contains(bits(1, 500)));
+		assertTrue(bits(3, 130).intersects(bits(130)));
+		assertFalse(bits(3, 130).intersects(bits(4, 129)));
+	}
+
+	@Test
+	public void testInto() {
+		RECSBits a = bits(1, 64, 130);
+		RECSBits b = bits(1, 65);
+		RECSBits out = bits(300);
+
+		a.andInto(b, out);
+		assertEquals(bits(1), out);
+		a.andNotInto(b, out);
+		assertEquals(bits(64, 130), out);
+		a.xorInto(b, out);
+		assertEquals(bits(64, 65, 130), out);
+		assertEquals(out, a.getRemovedBits(b));
+
+		//The result can be written into one of the operands.
+		a.andNotInto(b, b);
+		assertEquals(bits(64, 130), b);
+		assertEquals(bits(65), bits(1).getAddedBits(bits(1, 65)));
+	}
+}
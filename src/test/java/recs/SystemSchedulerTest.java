@@ -0,0 +1,359 @@
+package recs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import recs.components.Attack0;
+import recs.components.Health0;
+import recs.components.Position0;
+import recs.components.Velocity0;
+import recs.entities.TestZombie;
+
+import com.badlogic.gdx.utils.IntArray;
+
+public class SystemSchedulerTest {
+	private EntityWorld world;
+	/** The order in which the systems finished */
+	private final IntArray finished = new IntArray();
+
+	private abstract class RecordingSystem extends EntitySystem {
+		private final int number;
+
+		@SuppressWarnings("unchecked")
+		public RecordingSystem(int number) {
+			super(Position0.class);
+			this.number = number;
+		}
+
+		@Override
+		protected void processSystem(float deltaInSec) {
+			super.processSystem(deltaInSec);
+			synchronized (finished) {
+				finished.add(number);
+			}
+		}
+	}
+
+	private class PositionSystem extends RecordingSystem {
+		private ComponentMapper<Position0> positionMapper;
+
+		public PositionSystem(int number) {
+			super(number);
+		}
+	}
+
+	private class HealthSystem extends RecordingSystem {
+		private ComponentMapper<Health0> healthMapper;
+
+		public HealthSystem(int number) {
+			super(number);
+		}
+	}
+
+	private class PositionReaderSystem extends RecordingSystem {
+		@Read
+		private ComponentMapper<Position0> positionMapper;
+		private boolean move = false;
+
+		public PositionReaderSystem(int number) {
+			super(number);
+		}
+
+		@Override
+		protected void processEntity(int id, float deltaSec) {
+			Position0 position = positionMapper.get(id);
+			if (move)
+				position.x += 1;
+		}
+	}
+
+	/** Waits for another system to be processed at the same time */
+	private class BarrierSystem extends RecordingSystem {
+		private final CyclicBarrier barrier;
+		boolean metOther = false;
+
+		public BarrierSystem(int number, CyclicBarrier barrier) {
+			super(number);
+			this.barrier = barrier;
+		}
+
+		@Override
+		protected void processSystem(float deltaInSec) {
+			try {
+				barrier.await(5, TimeUnit.SECONDS);
+				metOther = true;
+			} catch (Exception e) {
+				metOther = false;
+			}
+			super.processSystem(deltaInSec);
+		}
+	}
+
+	private class VelocityBarrierSystem extends BarrierSystem {
+		private ComponentMapper<Velocity0> velocityMapper;
+
+		public VelocityBarrierSystem(int number, CyclicBarrier barrier) {
+			super(number, barrier);
+		}
+	}
+
+	private class AttackBarrierSystem extends BarrierSystem {
+		private ComponentMapper<Attack0> attackMapper;
+
+		public AttackBarrierSystem(int number, CyclicBarrier barrier) {
+			super(number, barrier);
+		}
+	}
+
+	@Before
+	public void setup() {
+		world = new EntityWorld();
+		world.setParallelProcessing(true);
+		world.addEntity(new TestZombie(0, 0));
+	}
+
+	@After
+	public void breakDown() {
+		world.reset();
+	}
+
+	@Test
+	public void testIndependentSystemsRunTogether() {
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		BarrierSystem velocitySystem = new VelocityBarrierSystem(0, barrier);
+		BarrierSystem attackSystem = new AttackBarrierSystem(1, barrier);
+		world.addSystem(velocitySystem, attackSystem);
+		if (world.getParallelism() < 2)
+			return;
+		world.process(1f);
+		assertTrue(velocitySystem.metOther);
+		assertTrue(attackSystem.metOther);
+	}
+
+	@Test
+	public void testConflictingSystemsKeepTheirOrder() {
+		for (int i = 0; i < 10; i++)
+			world.addSystem(i % 2 == 0 ? new PositionSystem(i) : new HealthSystem(i));
+		for (int round = 0; round < 20; round++) {
+			finished.clear();
+			world.process(1f);
+			assertEquals(10, finished.size);
+			int lastPosition = -1, lastHealth = -1;
+			for (int i = 0; i < finished.size; i++) {
+				int number = finished.get(i);
+				if (number % 2 == 0) {
+					assertTrue(number > lastPosition);
+					lastPosition = number;
+				} else {
+					assertTrue(number > lastHealth);
+					lastHealth = number;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRunAfter() {
+		PositionSystem first = new PositionSystem(0);
+		HealthSystem second = new HealthSystem(1);
+		world.addSystem(second, first);
+		second.runAfter(first);
+		for (int round = 0; round < 20; round++) {
+			finished.clear();
+			world.process(1f);
+			assertEquals(0, finished.get(0));
+			assertEquals(1, finished.get(1));
+		}
+	}
+
+	private class PositionVelocitySystem extends RecordingSystem {
+		private ComponentMapper<Position0> positionMapper;
+		private ComponentMapper<Velocity0> velocityMapper;
+
+		public PositionVelocitySystem(int number) {
+			super(number);
+		}
+	}
+
+	private class VelocitySystem extends RecordingSystem {
+		private ComponentMapper<Velocity0> velocityMapper;
+
+		public VelocitySystem(int number) {
+			super(number);
+		}
+	}
+
+	@Test
+	public void testRunAfterOrdersConflicts() {
+		PositionSystem a = new PositionSystem(0);
+		PositionVelocitySystem b = new PositionVelocitySystem(1);
+		VelocitySystem c = new VelocitySystem(2);
+		world.addSystem(a, b, c);
+		a.runAfter(c);
+		for (int round = 0; round < 20; round++) {
+			finished.clear();
+			world.process(1f);
+			assertEquals(3, finished.size);
+			//b conflicts with both, c runs before a so b can not run between them.
+			assertTrue(finished.indexOf(2) < finished.indexOf(0));
+			assertTrue(finished.indexOf(1) < finished.indexOf(2) || finished.indexOf(1) > finished.indexOf(0));
+		}
+	}
+
+	@Test
+	public void testRunAfterWithoutParallelProcessing() {
+		world.setParallelProcessing(false);
+		PositionSystem a = new PositionSystem(0);
+		PositionVelocitySystem b = new PositionVelocitySystem(1);
+		VelocitySystem c = new VelocitySystem(2);
+		world.addSystem(a, b, c);
+		a.runAfter(c);
+		world.process(1f);
+		assertEquals(3, finished.size);
+		assertEquals(1, finished.get(0));
+		assertEquals(2, finished.get(1));
+		assertEquals(0, finished.get(2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRunAfterCycleWithoutParallelProcessing() {
+		world.setParallelProcessing(false);
+		PositionSystem first = new PositionSystem(0);
+		HealthSystem second = new HealthSystem(1);
+		world.addSystem(first, second);
+		first.runAfter(second);
+		second.runAfter(first);
+		world.process(1f);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRunAfterCycle() {
+		PositionSystem first = new PositionSystem(0);
+		HealthSystem second = new HealthSystem(1);
+		world.addSystem(first, second);
+		first.runAfter(second);
+		second.runAfter(first);
+		world.process(1f);
+	}
+
+	@Test
+	public void testSystemsWithoutMappersConflict() {
+		RecordingSystem plain = new RecordingSystem(0) {
+		};
+		PositionSystem positionSystem = new PositionSystem(1);
+		HealthSystem healthSystem = new HealthSystem(2);
+		world.addSystem(plain, positionSystem, healthSystem);
+		assertTrue(SystemScheduler.conflicts(plain, healthSystem));
+		assertFalse(SystemScheduler.conflicts(positionSystem, healthSystem));
+	}
+
+	@Test
+	public void testReadOnlyMappers() {
+		PositionReaderSystem firstReader = new PositionReaderSystem(0);
+		PositionReaderSystem secondReader = new PositionReaderSystem(1);
+		PositionSystem writer = new PositionSystem(2);
+		world.addSystem(firstReader, secondReader, writer);
+		assertFalse(SystemScheduler.conflicts(firstReader, secondReader));
+		assertTrue(SystemScheduler.conflicts(firstReader, writer));
+		assertTrue(firstReader.readComponents.get(world.getComponentId(Position0.class)));
+		assertTrue(writer.writeComponents.get(world.getComponentId(Position0.class)));
+
+		ComponentMapper<Position0> view = firstReader.positionMapper;
+		assertNotSame(world.getComponentMapper(Position0.class), view);
+		try {
+			view.add(0, new Position0());
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		world.process(1f);
+		assertEquals(3, finished.size);
+	}
+
+	@Test
+	public void testCheckReadOnlyMappers() {
+		PositionReaderSystem reader = new PositionReaderSystem(0);
+		world.addSystem(reader);
+		world.setCheckReadOnlyMappers(true);
+		world.process(1f);
+
+		reader.move = true;
+		try {
+			world.process(1f);
+			fail();
+		} catch (RuntimeException e) {
+			Throwable cause = e instanceof IllegalStateException ? e : e.getCause();
+			assertTrue(cause instanceof IllegalStateException);
+		}
+
+		//Without checking the write goes unnoticed.
+		world.setCheckReadOnlyMappers(false);
+		world.process(1f);
+	}
+
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		EntityWorld world = new EntityWorld();
+		world.setComponentStorage(Position0.class, ComponentStorage.COLUMNAR);
+		PositionReaderSystem firstReader = new PositionReaderSystem(0);
+		PositionReaderSystem secondReader = new PositionReaderSystem(1);
+		world.addSystem(firstReader, secondReader);
+		final int[] ids = new int[200];
+		for (int i = 0; i < ids.length; i++) {
+			Entity e = new Entity();
+			e.addComponent(new Position0(i, i * 2));
+			ids[i] = world.addEntity(e);
+		}
+
+		ComponentMapper<Position0> mapper = world.getComponentMapper(Position0.class);
+		final ComponentMapper<Position0> firstView = firstReader.positionMapper;
+		final ComponentMapper<Position0> secondView = secondReader.positionMapper;
+		assertNotSame(firstView.get(ids[0]), secondView.get(ids[0]));
+		assertNotSame(mapper.get(ids[0]), firstView.get(ids[0]));
+		assertNotSame(firstView.getIds(), secondView.getIds());
+		assertNotSame(firstView.getComponents(), secondView.getComponents());
+		assertNotSame(mapper.getComponents(), firstView.getComponents());
+
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[2];
+		for (int t = 0; t < threads.length; t++) {
+			final ComponentMapper<Position0> view = t == 0 ? firstView : secondView;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int n = 0; n < 200; n++) {
+						for (int i = 0; i < ids.length; i++) {
+							if (view.get(ids[i]).y != i * 2)
+								wrong.incrementAndGet();
+						}
+						int count = 0;
+						for (Position0 position : view.getComponents()) {
+							if (position.y != position.x * 2)
+								wrong.incrementAndGet();
+							count++;
+						}
+						if (count != view.getIds().toArray().size)
+							wrong.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, wrong.get());
+		assertNull(firstView.get(ids[ids.length - 1] + 1));
+		world.reset();
+	}
+}
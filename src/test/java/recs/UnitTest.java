@@ -7,6 +7,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -61,6 +67,7 @@ import recs.systems.TestHealthSystem;
 import recs.systems.TestMovementSystem;
 import recs.systems.TestThreadedMovementSystem;
 import recs.utils.BinarySerializer;
+import recs.utils.BlockingThreadPoolExecutor;
 
 import com.badlogic.gdx.utils.IntArray;
 
@@ -193,9 +200,7 @@ public class UnitTest {
 		assertTrue(position != null);
 	}
 
-	// TODO: get this working? @Test
-	// Works fine, just fails if the machine executing it doesnt give time to
-	// the threads.
+	@Test
 	public void testThreadedSystem() {
 		addEntities();
 		ms.setEnabled(false);
@@ -208,18 +213,104 @@ public class UnitTest {
 		float startX = position.x;
 		float startY = position.y;
 
-		try {
-			world.process(50);
-			Thread.sleep(500); // so threads can finish up.
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+		Frame frame = world.process(50);
+		frame.await();
+		assertTrue(frame.isDone());
 		position = world.getComponent(player.getId(), Position0.class);
 
 		assertTrue(velocity.x != 0 || velocity.y != 0);
 		assertTrue(startX != position.x || startY != position.y);
 	}
 
+	@Test
+	public void testRunAfterTaskSystem() {
+		addEntities();
+		ms.setEnabled(false);
+		tms.setEnabled(true);
+		final Position0 position = world.getComponent(player.getId(), Position0.class);
+		final float[] seenX = new float[1];
+		EntitySystem reader = new EntitySystem() {
+			@Override
+			protected void processSystem(float deltaInSec) {
+				seenX[0] = position.x;
+			}
+		};
+		world.addSystem(reader);
+		reader.runAfter(tms);
+
+		for (int i = 0; i < 100; i++) {
+			world.process(1);
+			//The reader saw the position after the task system moved it.
+			assertEquals(position.x, seenX[0], 0f);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testTaskSystemRun() {
+		final float[] deltas = new float[2];
+		final int[] runs = new int[1];
+		EntityTaskSystem task = new EntityTaskSystem(Position0.class) {
+			@Override
+			protected void processSystem(float deltaInSec) {
+				deltas[runs[0]++] = deltaInSec;
+			}
+		};
+		world.addSystem(task);
+		world.process(0.5f).await();
+		//Running the system directly uses the delta of the last process.
+		task.run();
+		assertEquals(2, runs[0]);
+		assertEquals(0.5f, deltas[0], 0f);
+		assertEquals(0.5f, deltas[1], 0f);
+	}
+
+	@Test
+	public void testTaskExecutor() {
+		addEntities();
+		ms.setEnabled(false);
+		tms.setEnabled(true);
+		final AtomicInteger executed = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(1);
+		world.setTaskExecutor(new Executor() {
+			public void execute(Runnable command) {
+				executed.incrementAndGet();
+				pool.execute(command);
+			}
+		});
+		assertEquals(-1, world.getTaskPoolSize());
+
+		for (int i = 0; i < 10; i++)
+			world.process(1).await();
+		assertEquals(10, executed.get());
+		assertEquals(0, world.getPendingTasks());
+		pool.shutdown();
+
+		world.setTaskExecutor(new BlockingThreadPoolExecutor(1, 1, 4));
+		Frame frame = world.process(1);
+		assertTrue(world.getTaskPoolSize() >= 0);
+		assertTrue(world.getTaskQueueSize() >= 0);
+		frame.await();
+		assertEquals(0, world.getPendingTasks());
+	}
+
+	@Test
+	public void testBlockingThreadPoolExecutor() throws InterruptedException {
+		BlockingThreadPoolExecutor executor = new BlockingThreadPoolExecutor(1, 2, 2);
+		final int count = 1000;
+		final CountDownLatch done = new CountDownLatch(count);
+		//Submitting more tasks than fit in the queue blocks instead of leaving tasks behind.
+		for (int i = 0; i < count; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+
 	@Test
 	public void testThreadPool() {
 		addEntities();
@@ -380,6 +471,108 @@ public class UnitTest {
 		assertTrue(position2 == null);
 	}
 
+	private class AttackPool extends ComponentPool<Attack0> {
+		private int created = 0;
+
+		public AttackPool(EntityWorld world, int max) {
+			super(world, max);
+		}
+
+		@Override
+		protected Attack0 newComponent() {
+			created++;
+			return new Attack0(0);
+		}
+
+		@Override
+		protected void reset(Attack0 component) {
+			component.attack = 0;
+		}
+	}
+
+	@Test
+	public void testComponentPool() {
+		AttackPool pool = new AttackPool(world, 2);
+
+		int[] ids = new int[3];
+		for (int i = 0; i < ids.length; i++) {
+			Entity e = new Entity();
+			Attack0 attack = world.obtainComponent(Attack0.class);
+			attack.attack = 5;
+			e.addComponent(attack);
+			ids[i] = world.addEntity(e);
+		}
+		assertEquals(3, pool.created);
+
+		for (int id : ids)
+			world.removeEntity(id);
+		assertEquals(2, pool.getFree());
+
+		Attack0 reused = world.obtainComponent(Attack0.class);
+		assertEquals(0, reused.attack);
+		assertEquals(3, pool.created);
+
+		Entity e = new Entity();
+		e.addComponent(reused);
+		world.addEntity(e);
+		e.removeComponent(reused);
+		assertEquals(2, pool.getFree());
+	}
+
+	@Test
+	public void testComponentPoolSkipsDeclaredComponents() {
+		addEntities();
+		new AttackPool(world, 10);
+		world.removeEntity(playerWithAttack.getId());
+		assertEquals(0, world.getComponentPool(Attack0.class).getFree());
+
+		player.addComponent(new Attack0(1));
+		world.removeEntity(player.getId());
+		assertEquals(1, world.getComponentPool(Attack0.class).getFree());
+	}
+
+	@Test
+	public void testEntityPool() {
+		EntityPool<TestPlayer> pool = new EntityPool<TestPlayer>(world, 1) {
+			@Override
+			protected TestPlayer newEntity() {
+				return new TestPlayer(0, 0);
+			}
+
+			@Override
+			protected void reset(TestPlayer entity) {
+				entity.position.x = 0;
+				entity.health.amount = entity.health.max;
+			}
+		};
+
+		TestPlayer entity = world.obtainEntity(TestPlayer.class);
+		entity.position.x = 5;
+		entity.health.amount = 1;
+		int id = world.addEntity(entity);
+		assertTrue(hs.hasEntity(id));
+
+		world.removeEntity(id);
+		assertEquals(0, entity.getId());
+		assertFalse(hs.hasEntity(id));
+		assertEquals(1, pool.getFree());
+
+		TestPlayer reused = world.obtainEntity(TestPlayer.class);
+		assertTrue(reused == entity);
+		assertEquals(0, reused.position.x, 0f);
+		assertEquals(reused.health.max, reused.health.amount);
+
+		int newId = world.addEntity(reused);
+		assertTrue(ms.hasEntity(newId));
+		assertTrue(hs.hasEntity(newId));
+		assertTrue(world.getComponent(newId, Position0.class) == reused.position);
+
+		//Pool is limited to one entity.
+		world.removeEntity(newId);
+		world.removeEntity(world.addEntity(new TestPlayer(0, 0)));
+		assertEquals(1, pool.getFree());
+	}
+
 	@Test
 	public void testDynamicEntity() {
 		Entity e = new Entity();
@@ -538,6 +731,112 @@ public class UnitTest {
 		assertTrue(hasAnRemovedEntityId);
 	}
 
+	@Test
+	public void testEntityHandle() {
+		addEntities();
+		long handle = player.getHandle();
+		assertTrue(world.isValid(handle));
+		assertTrue(world.getEntity(handle) == player);
+
+		int id = player.getId();
+		world.removeEntity(id);
+		assertFalse(world.isValid(handle));
+
+		TestPlayer newPlayer = new TestPlayer(0, 0);
+		assertEquals(id, world.addEntity(newPlayer));
+		assertFalse(world.isValid(handle));
+		assertNull(world.getEntity(handle));
+		assertTrue(world.isValid(newPlayer.getHandle()));
+	}
+
+	@Test
+	public void testEntityIdsStayCompact() {
+		IntArray ids = new IntArray();
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 100; i++)
+				ids.add(world.addEntity(new TestPlayer(0, 0)));
+			for (int i = 0; i < ids.size; i++)
+				world.removeEntity(ids.get(i));
+			ids.clear();
+		}
+		assertTrue(world.addEntity(new TestPlayer(0, 0)) <= 100);
+	}
+
+	@Test
+	public void testAddEntities() {
+		TestPlayer[] players = new TestPlayer[200];
+		Entity[] entities = new Entity[players.length + 1];
+		for (int i = 0; i < players.length; i++)
+			entities[i] = players[i] = new TestPlayer(i, 0);
+		zombie = new TestZombie(0, 0);
+		entities[players.length] = zombie;
+
+		int[] ids = world.addEntities(entities);
+		assertEquals(entities.length, ids.length);
+		for (int i = 0; i < entities.length; i++)
+			assertEquals(ids[i], entities[i].getId());
+		assertEquals(entities.length, ms.getAllEntities().size);
+		assertEquals(players.length, hs.getAllEntities().size);
+
+		world.process(1f);
+		for (int i = 0; i < players.length; i++)
+			assertEquals(i + 2f, world.getComponent(ids[i], Position0.class).x, 0f);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCreateEntities() {
+		EntityArchetype archetype = world.getArchetype(Position0.class, Velocity0.class);
+		int[] ids = world.createEntities(archetype, 300);
+		assertEquals(300, ms.getAllEntities().size);
+		assertEquals(0, hs.getAllEntities().size);
+
+		for (int i = 0; i < ids.length; i++)
+			world.getComponent(ids[i], Velocity0.class).x = i;
+		world.process(1f);
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i, world.getComponent(ids[i], Position0.class).x, 0f);
+			assertNull(world.getComponent(ids[i], Health0.class));
+		}
+
+		world.removeEntity(ids[0]);
+		assertEquals(299, ms.getAllEntities().size);
+	}
+
+	@Test
+	public void testStagedComponents() throws InterruptedException {
+		final Entity[] entities = new Entity[400];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * entities.length / threads.length;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = offset; i < offset + entities.length / 4; i++) {
+						Entity e = new Entity();
+						Attack0 attack = new Attack0(i);
+						e.addComponent(new Position0(i, 0), new Velocity0(1, 1), attack);
+						e.removeComponent(attack);
+						entities[i] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(2, entities[0].getComponents().length);
+		assertFalse(entities[0].hasComponent(Attack0.class));
+
+		world.addEntities(entities);
+		assertEquals(entities.length, ms.getAllEntities().size);
+		for (int i = 0; i < entities.length; i++) {
+			assertEquals(i, entities[i].getComponent(Position0.class).x, 0f);
+			assertNull(entities[i].getComponent(Attack0.class));
+		}
+	}
+
 	@After
 	public void breakDown() {
 		world.reset();
@@ -10,4 +10,8 @@ public class Position0 extends Component {
         this.x = x;
         this.y = y;
     }
+
+    public Position0() {
+
+    }
 }